@@ -0,0 +1,132 @@
+package com.crossover.trial.weather;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded pool running the suspended requests of the asynchronous endpoints, so the container threads are released
+ * while a response is computed and written, and slow or bursty clients only queue up here.
+ * <p>
+ * When every thread is busy and the queue is full a request is answered at once with 503 and a Retry-After header, and
+ * requests which waited on the queue longer than the timeout are answered the same way and never run. Both show up
+ * as 503 on the route metrics. Requests already running are never timed out, so a 503 always means the request was
+ * not applied and can be retried.
+ */
+@Slf4j
+@Component
+public class RequestExecutor implements InitializingBean, DisposableBean
+{
+	// Seconds clients are asked to wait before retrying a rejected request
+	private static final String RETRY_AFTER_SECONDS = "1";
+
+	// Threads running the requests, 0 runs them on the container thread
+	@Value("${weather.async.threads:8}") private int threads = 8;
+
+	// Requests waiting for a thread
+	@Value("${weather.async.queue:1024}") private int queue = 1024;
+
+	// Max time a request waits on the queue, in millis, 0 for no limit
+	@Value("${weather.async.timeout-millis:5000}") private long timeoutMillis = 5000;
+
+	private ThreadPoolExecutor executor;
+
+	@Override
+	public void afterPropertiesSet()
+	{
+		if (threads <= 0)
+			return;
+
+		AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue),
+				r -> {
+					Thread t = new Thread(r, "weather-request-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+	}
+
+	/**
+	 * Computes a response on the pool and resumes the suspended request with it. Exceptions are resumed too, so they go
+	 * through the exception mappers as on a synchronous request.
+	 *
+	 * @param response suspended request
+	 * @param work computes the response
+	 */
+	public void submit(AsyncResponse response, Supplier<Response> work)
+	{
+		if (executor == null)
+		{
+			resume(response, work);
+			return;
+		}
+
+		// Claimed by whichever comes first, the thread running the work or the timeout
+		AtomicBoolean claimed = new AtomicBoolean();
+		if (timeoutMillis > 0)
+		{
+			response.setTimeoutHandler(r -> {
+				if (claimed.compareAndSet(false, true))
+					r.resume(unavailable());
+				else
+					r.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+			});
+			response.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+
+		try
+		{
+			executor.execute(() -> {
+				// Not timed out while queued
+				if (claimed.compareAndSet(false, true))
+					resume(response, work);
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			log.debug("Request rejected, {} requests queued", executor.getQueue().size());
+			response.resume(unavailable());
+		}
+	}
+
+	@Override
+	public void destroy()
+	{
+		if (executor != null)
+			executor.shutdown();
+	}
+
+	private static void resume(AsyncResponse response, Supplier<Response> work)
+	{
+		try
+		{
+			response.resume(work.get());
+		}
+		catch (RuntimeException e)
+		{
+			response.resume(e);
+		}
+	}
+
+	private static Response unavailable()
+	{
+		return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+				.build();
+	}
+}
@@ -0,0 +1,34 @@
+package com.crossover.trial.weather;
+
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.crossover.trial.weather.metrics.EndpointMetrics;
+
+/**
+ * Latency and throughput of each route of the REST API, as measured by the {@code JerseyProbe}.
+ */
+@Component
+@Path("/metrics")
+public class RestMetricsEndpoint
+{
+	@Autowired private EndpointMetrics metrics;
+
+	/**
+	 * @return uptime in seconds and, for each route, requests, rate, in flight requests, counts per status code and
+	 *         latency percentiles in millis
+	 */
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	public Map<String, Object> metrics()
+	{
+		return metrics.snapshot();
+	}
+}
@@ -1,26 +1,50 @@
 package com.crossover.trial.weather;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
+import com.crossover.trial.weather.config.WireFormat;
 import com.crossover.trial.weather.exceptions.WeatherException;
+import com.crossover.trial.weather.loader.AirportParser;
 import com.crossover.trial.weather.model.AirportData;
 import com.crossover.trial.weather.model.DataPoint;
 import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.ImportResult;
+import com.crossover.trial.weather.model.UpdateStatus;
+import com.crossover.trial.weather.model.WeatherUpdate;
 import com.crossover.trial.weather.repo.WeatherRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
@@ -36,12 +60,23 @@ import lombok.extern.slf4j.Slf4j;
 @Path("/collect")
 public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint
 {
+	private static final String NDJSON = "application/x-ndjson";
+	private static final String CSV = "text/csv";
+
+	// Number of airports applied to the repository at once on bulk imports
+	private static final int IMPORT_CHUNK_SIZE = 500;
+
 	@Autowired private ObjectMapper mapper;
 
+	// Same configuration as the json mapper, for the smile encoded bodies
+	private final ObjectMapper smile = WireFormat.smileMapper();
+
 	@Autowired private ApplicationContext appContext;
 
 	@Autowired private WeatherRepository repo;
 
+	@Autowired private RequestExecutor executor;
+
 	/**
 	 * A liveliness check for the collection endpoint.
 	 *
@@ -57,7 +92,7 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint
 
 	/**
 	 * Update the airports atmospheric information for a particular pointType with json formatted data point
-	 * information.
+	 * information. Same as {@link #updateWeather(String, String, MediaType, InputStream)} with the body already read.
 	 *
 	 * @param iataCode the 3 letter airport code
 	 * @param pointType the point type, {@link DataPointType} for a complete list
@@ -66,22 +101,73 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint
 	 * @return HTTP Response code
 	 */
 	@Override
+	public Response updateWeather(String iataCode, String pointType, String dataPointJson)
+	{
+		return updateWeather(iataCode, pointType, () -> mapper.readValue(dataPointJson, DataPoint.class));
+	}
+
+	/**
+	 * Update the airports atmospheric information for a particular pointType with a data point, parsed as it's read.
+	 *
+	 * @param iataCode the 3 letter airport code
+	 * @param pointType the point type, {@link DataPointType} for a complete list
+	 * @param contentType media type of the body, smile or else json
+	 * @param body a dict containing mean, first, second, thrid and count keys
+	 *
+	 * @return HTTP Response code
+	 */
+	@Override
+	public Response updateWeather(String iataCode, String pointType, MediaType contentType, InputStream body)
+	{
+		ObjectMapper m = WireFormat.SMILE_TYPE.isCompatible(contentType) ? smile : mapper;
+		return updateWeather(iataCode, pointType, () -> m.readValue(body, DataPoint.class));
+	}
+
+	/**
+	 * Same as {@link #updateWeather(String, String, MediaType, InputStream)}, read and applied on the
+	 * {@link RequestExecutor} while the container thread is released.
+	 *
+	 * @param iataCode the 3 letter airport code
+	 * @param pointType the point type, {@link DataPointType} for a complete list
+	 * @param contentType media type of the body, smile or else json
+	 * @param body a dict containing mean, first, second, thrid and count keys
+	 * @param response resumed with the HTTP Response code
+	 */
+	@Override
 	@POST
 	@Path("/weather/{iata}/{pointType}")
-	public Response updateWeather(@PathParam("iata") String iataCode, @PathParam("pointType") String pointType,
-			String dataPointJson)
+	public void updateWeather(@PathParam("iata") String iataCode, @PathParam("pointType") String pointType,
+			@HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body,
+			@Suspended AsyncResponse response)
 	{
-		try
+		executor.submit(response, () -> updateWeather(iataCode, pointType, contentType, body));
+	}
+
+	/**
+	 * Bad requests are answered without building an exception where possible, and logged without stack trace.
+	 */
+	private Response updateWeather(String iataCode, String pointType, Callable<DataPoint> dataPoint)
+	{
+		Optional<DataPointType> type = DataPointType.find(pointType);
+		if (!type.isPresent())
 		{
-			DataPointType type = DataPointType.valueOf(pointType.toUpperCase());
+			log.debug("UpdateWeather rejected, unknown point type: {}", pointType);
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
 
-			if (!repo.findAirport(iataCode).isPresent())
-				return Response.status(Response.Status.NOT_FOUND).build();
-			else
+		try
+		{
+			if (repo.addDataPoint(iataCode, type.get(), dataPoint.call()) == UpdateStatus.UNKNOWN_AIRPORT)
 			{
-				repo.addDataPoint(iataCode, type, mapper.readValue(dataPointJson, DataPoint.class));
-				return Response.status(Response.Status.OK).build();
+				log.debug("UpdateWeather rejected, unknown airport: {}", iataCode);
+				return Response.status(Response.Status.NOT_FOUND).build();
 			}
+			return Response.status(Response.Status.OK).build();
+		}
+		catch (JsonProcessingException | WeatherException | IllegalArgumentException | IllegalStateException e)
+		{
+			log.debug("UpdateWeather rejected, bad data point: {}", e.getMessage());
+			return Response.status(Response.Status.NOT_FOUND).build();
 		}
 		catch (Exception e)
 		{
@@ -90,6 +176,68 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint
 		}
 	}
 
+	/**
+	 * Update the atmospheric information of several airports at once. The body is either a json array or a stream of
+	 * new line delimited json objects, each one with iata, pointType and dataPoint keys, or the same encoded as smile.
+	 *
+	 * @param contentType media type of the body
+	 * @param body the updates
+	 * @return HTTP Response code and a json formatted list with the {@link UpdateStatus} of each update
+	 */
+	@Override
+	public Response updateWeatherBatch(MediaType contentType, InputStream body)
+	{
+		ObjectMapper m = WireFormat.SMILE_TYPE.isCompatible(contentType) ? smile : mapper;
+
+		List<WeatherUpdate> updates = new ArrayList<>();
+		List<Integer> malformed = new ArrayList<>();
+
+		try (MappingIterator<JsonNode> it = m.readerFor(JsonNode.class).readValues(body))
+		{
+			while (it.hasNextValue())
+			{
+				JsonNode node = it.nextValue();
+				try
+				{
+					updates.add(m.treeToValue(node, WeatherUpdate.class));
+				}
+				catch (Exception e)
+				{
+					malformed.add(updates.size() + malformed.size());
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			log.warn("UpdateWeatherBatch error: {}", e.getMessage());
+			return Response.status(Response.Status.BAD_REQUEST).build();
+		}
+
+		List<UpdateStatus> retval = new ArrayList<>(repo.addDataPoints(updates));
+		malformed.forEach(i -> retval.add(i, UpdateStatus.MALFORMED));
+
+		return Response.status(Response.Status.OK).entity(retval).build();
+	}
+
+	/**
+	 * Same as {@link #updateWeatherBatch(MediaType, InputStream)}, read and applied on the {@link RequestExecutor}
+	 * while the container thread is released.
+	 *
+	 * @param contentType media type of the body
+	 * @param body the updates
+	 * @param response resumed with the HTTP Response code and the {@link UpdateStatus} of each update
+	 */
+	@Override
+	@POST
+	@Path("/weather/batch")
+	@Consumes({ MediaType.APPLICATION_JSON, NDJSON, WireFormat.SMILE })
+	@Produces(MediaType.APPLICATION_JSON)
+	public void updateWeatherBatch(@HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body,
+			@Suspended AsyncResponse response)
+	{
+		executor.submit(response, () -> updateWeatherBatch(contentType, body));
+	}
+
 	/**
 	 * Return a list of known airports as a json formatted list
 	 *
@@ -148,31 +296,51 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint
 			repo.addAirport(airport);
 			return Response.status(Response.Status.OK).build();
 		}
-		catch (WeatherException e)
+		catch (WeatherException | IllegalArgumentException e)
 		{
-			log.error("Error adding airport.", e);
+			log.debug("AddAirport rejected, bad airport: {}", e.getMessage());
 			return Response.status(Response.Status.NOT_FOUND).build();
 		}
 	}
 
 	/**
-	 * Add a new airport to the known airport list.
+	 * Add a new airport to the known airport list. Same as {@link #addAirport(InputStream)} with the body already read.
 	 *
+	 * @param airportDataJson json formatted airport
+	 * @return HTTP Response code for the add operation
+	 */
+	@Override
+	public Response addAirport(String airportDataJson)
+	{
+		return addAirport(() -> mapper.readValue(airportDataJson, AirportData.class));
+	}
+
+	/**
+	 * Add a new airport to the known airport list, parsed as it's read.
+	 *
+	 * @param body json formatted airport
 	 * @return HTTP Response code for the add operation
 	 */
 	@Override
 	@POST
 	@Path("/airport")
-	public Response addAirport(String airportDataJson)
+	public Response addAirport(InputStream body)
+	{
+		return addAirport(() -> mapper.readValue(body, AirportData.class));
+	}
+
+	private Response addAirport(Callable<AirportData> airport)
 	{
 		try
 		{
-			AirportData data = mapper.readValue(airportDataJson, AirportData.class);
-			data = data.withIata(data.iata().toUpperCase()).withIcao(data.icao().toUpperCase());
-
-			repo.addAirport(data);
+			repo.addAirport(normalize(airport.call()));
 			return Response.status(Response.Status.OK).build();
 		}
+		catch (JsonProcessingException | WeatherException | IllegalArgumentException | IllegalStateException e)
+		{
+			log.debug("AddAirport rejected, bad airport: {}", e.getMessage());
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
 		catch (Exception e)
 		{
 			log.error("Error adding airport.", e);
@@ -180,6 +348,70 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint
 		}
 	}
 
+	/**
+	 * Add or update many airports at once. The body is streamed, either as airports.dat formatted csv rows or as json
+	 * airports (array or new line delimited), and applied to the repository in chunks.
+	 *
+	 * @param contentType media type of the body
+	 * @param body the airports
+	 * @return HTTP Response code and a json formatted {@link ImportResult}
+	 */
+	@Override
+	@POST
+	@Path("/airports")
+	@Consumes({ CSV, NDJSON, MediaType.APPLICATION_JSON })
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response addAirports(@HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body)
+	{
+		AirportImport airports = new AirportImport();
+		try
+		{
+			if (MediaType.valueOf(CSV).isCompatible(contentType))
+			{
+				try (CSVParser parser = new CSVParser(new InputStreamReader(body, StandardCharsets.UTF_8),
+						AirportParser.FORMAT))
+				{
+					for (CSVRecord record : parser)
+					{
+						try
+						{
+							airports.add(AirportParser.parse(record));
+						}
+						catch (WeatherException e)
+						{
+							airports.reject(record.getRecordNumber(), e.getMessage());
+						}
+					}
+				}
+			}
+			else
+			{
+				try (MappingIterator<JsonNode> it = mapper.readerFor(JsonNode.class).readValues(body))
+				{
+					for (long row = 1; it.hasNextValue(); row++)
+					{
+						JsonNode node = it.nextValue();
+						try
+						{
+							airports.add(mapper.treeToValue(node, AirportData.class));
+						}
+						catch (Exception e)
+						{
+							airports.reject(row, e.getMessage());
+						}
+					}
+				}
+			}
+		}
+		catch (IOException | IllegalStateException e)
+		{
+			log.warn("AddAirports error: {}", e.getMessage());
+			return Response.status(Response.Status.BAD_REQUEST).entity(airports.finish()).build();
+		}
+
+		return Response.status(Response.Status.OK).entity(airports.finish()).build();
+	}
+
 	/**
 	 * Remove an airport from the known airport list
 	 *
@@ -195,6 +427,59 @@ public class RestWeatherCollectorEndpoint implements WeatherCollectorEndpoint
 		return Response.status(Response.Status.OK).build();
 	}
 
+	/**
+	 * Upper case codes of an airport.
+	 *
+	 * @param data airport
+	 * @return normalized airport
+	 */
+	private static AirportData normalize(AirportData data)
+	{
+		data = data.withIata(data.iata().toUpperCase());
+		return data.icao() == null ? data : data.withIcao(data.icao().toUpperCase());
+	}
+
+	/**
+	 * State of a bulk import, gathers the airports in chunks before sending them to the repository.
+	 */
+	private class AirportImport
+	{
+		private final long start = System.currentTimeMillis();
+		private final List<AirportData> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+		private final List<String> errors = new ArrayList<>();
+		private int accepted;
+
+		void add(AirportData airport)
+		{
+			chunk.add(normalize(airport));
+			if (chunk.size() == IMPORT_CHUNK_SIZE)
+				flush();
+		}
+
+		void reject(long row, String error)
+		{
+			errors.add("row " + row + ": " + error);
+		}
+
+		ImportResult finish()
+		{
+			flush();
+			return ImportResult.builder()
+					.accepted(accepted)
+					.rejected(errors.size())
+					.errors(errors)
+					.millis(System.currentTimeMillis() - start)
+					.build();
+		}
+
+		private void flush()
+		{
+			repo.addAirports(chunk);
+			accepted += chunk.size();
+			chunk.clear();
+		}
+	}
+
 	/**
 	 * Stops the server
 	 */
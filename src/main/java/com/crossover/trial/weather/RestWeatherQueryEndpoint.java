@@ -1,25 +1,34 @@
 package com.crossover.trial.weather;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.crossover.trial.weather.config.WireFormat;
 import com.crossover.trial.weather.model.AirportData;
 import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.HistoricDataPoint;
 import com.crossover.trial.weather.repo.WeatherRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -36,13 +45,24 @@ import lombok.extern.slf4j.Slf4j;
 @Path("/query")
 public class RestWeatherQueryEndpoint implements WeatherQueryEndpoint
 {
-	private static final Double MAX_HIST = 999.0;
 	private static final Double MIN_RADIUS = 0.0;
 
 	@Autowired private ObjectMapper mapper;
 
 	@Autowired private WeatherRepository repo;
 
+	@Autowired private WeatherResponseCache cache;
+
+	@Autowired private RequestExecutor executor;
+
+	// Interval between refreshes of the ping response, in millis
+	@Value("${weather.ping.refresh-millis:1000}") private long pingRefreshMillis;
+
+	// Last serialized ping response
+	private volatile PingSnapshot pingSnapshot;
+
+	private final AtomicBoolean pingRefreshing = new AtomicBoolean();
+
 	/**
 	 * Retrieve health and status information for the the query api. Returns information about how the number of
 	 * datapoints currently held in memory, the frequency of requests for each IATA code and the frequency of requests
@@ -55,41 +75,68 @@ public class RestWeatherQueryEndpoint implements WeatherQueryEndpoint
 	@Path("/ping")
 	public String ping()
 	{
-		Map<String, Object> retval = new HashMap<>();
+		PingSnapshot snapshot = pingSnapshot;
+		long now = System.currentTimeMillis();
 
-		long dataSize = repo.getAirports().stream().filter(a -> a.atmosphericInformation().recentReaded()).count();
+		if (snapshot == null || snapshot.generation != repo.getGeneration())
+		{
+			// No usable snapshot, build it on this thread
+			snapshot = refreshPing(now);
+		}
+		else if (now - snapshot.time >= pingRefreshMillis && pingRefreshing.compareAndSet(false, true))
+		{
+			// Stale snapshot, only one caller refreshes it while the others keep serving the old one
+			try
+			{
+				snapshot = refreshPing(now);
+			}
+			finally
+			{
+				pingRefreshing.set(false);
+			}
+		}
+		return snapshot.json;
+	}
 
-		retval.put("datasize", dataSize);
+	/**
+	 * Builds and publishes a new ping snapshot.
+	 *
+	 * @param now current time
+	 * @return snapshot
+	 */
+	private PingSnapshot refreshPing(long now)
+	{
+		int generation = repo.getGeneration();
+		Map<String, Object> retval = new HashMap<>();
+
+		retval.put("datasize", repo.getDataSize());
 
-		int freqSize = repo.getAirportData().size();
+		Map<String, Long> requests = repo.getIataFreq();
+		int freqSize = requests.size();
 		Map<String, Double> freq = new HashMap<>();
 		if (freqSize != 0)
-		{
-			repo.getAirportData().stream().forEach(a -> {
-				double frac = (double) a.getValue() / freqSize;
-				freq.put(a.getKey().iata(), frac);
-			});
-		}
+			requests.forEach((iata, count) -> freq.put(iata, (double) count / freqSize));
 		retval.put("iata_freq", freq);
 
-		int m = repo.getRadiusFreq().keySet().stream().max(Double::compare).orElse(MAX_HIST).intValue() + 1;
+		retval.put("radius_freq", repo.getRadiusFreq());
 
-		int[] hist = new int[m];
-		repo.getRadiusFreq().entrySet().stream().forEach(k -> {
-			int i = k.getKey().intValue() % 10;
-			hist[i] += k.getValue();
-		});
-		retval.put("radius_freq", hist);
-		
+		retval.put("cache", cache.getStats());
+
+		retval.put("repository", repo.getStats());
+
+		String json = null;
 		try
 		{
-			return mapper.writeValueAsString(retval);
+			json = mapper.writeValueAsString(retval);
 		}
 		catch (Exception e)
 		{
 			log.error("Ping error.", e);
-			return null;
 		}
+
+		PingSnapshot snapshot = new PingSnapshot(json, now, generation);
+		pingSnapshot = snapshot;
+		return snapshot;
 	}
 
 	/**
@@ -100,13 +147,10 @@ public class RestWeatherQueryEndpoint implements WeatherQueryEndpoint
 	 * @param radiusString the radius, in km, from which to collect weather data
 	 *
 	 * @return an HTTP Response and a list of {@link AtmosphericInformation} from the requested airport and airports in
-	 * the given radius
+	 * the given radius, json encoded unless smile is requested
 	 */
 	@Override
-	@GET
-	@Path("/weather/{iata}/{radius}")
-	@Produces(MediaType.APPLICATION_JSON)
-	public Response weather(@PathParam("iata") String iata, @PathParam("radius") String radiusString)
+	public Response weather(String iata, String radiusString)
 	{
 		Optional<AirportData> airport = repo.findAirport(iata);
 		if (!airport.isPresent())
@@ -118,20 +162,138 @@ public class RestWeatherQueryEndpoint implements WeatherQueryEndpoint
 
 		repo.updateRequestFrequency(iata, radius);
 
-		List<AtmosphericInformation> retval = Collections.emptyList();
-		if (Double.compare(radius, MIN_RADIUS) > 0)
+		AirportData center = airport.get();
+		if (!cache.isCacheable(radius))
 		{
-			retval = repo.getAirports()
-					.stream()
-					.filter(a -> a.atmosphericInformation().notEmpty())
-					.filter(a -> Double.compare(airport.get().calculateDistanceTo(a), radius) <= 0)
-					.map(a -> a.atmosphericInformation())
-					.collect(Collectors.toList());
+			// Written as the airports are found, without building the whole response
+			List<AtmosphericInformation> retval = new StreamedList<>(
+					() -> nearWeather(center, radius).filter(AtmosphericInformation::notEmpty),
+					center::atmosphericInformation);
+			return Response.status(Response.Status.OK).entity(retval).build();
 		}
 
-		if (retval.isEmpty())
-			retval = Arrays.asList(airport.get().atmosphericInformation());
+		List<AtmosphericInformation> retval = cache.get(center.iata(), radius, dependsOn -> {
+			dependsOn.add(center.iata());
+
+			List<AtmosphericInformation> near = near(center, radius)
+					.peek(a -> dependsOn.add(a.iata()))
+					.map(AirportData::atmosphericInformation)
+					.filter(AtmosphericInformation::notEmpty)
+					.collect(Collectors.toList());
+
+			if (near.isEmpty())
+				near = Arrays.asList(center.atmosphericInformation());
+			return near;
+		});
+
+		return Response.status(Response.Status.OK).entity(retval).build();
+	}
+
+	/**
+	 * Same as {@link #weather(String, String)}, computed and written on the {@link RequestExecutor} while the
+	 * container thread is released.
+	 *
+	 * @param iata the three letter airport code
+	 * @param radiusString the radius, in km, from which to collect weather data
+	 * @param response resumed with the HTTP Response
+	 */
+	@Override
+	@GET
+	@Path("/weather/{iata}/{radius}")
+	@Produces({ MediaType.APPLICATION_JSON, WireFormat.SMILE })
+	public void weather(@PathParam("iata") String iata, @PathParam("radius") String radiusString,
+			@Suspended AsyncResponse response)
+	{
+		executor.submit(response, () -> weather(iata, radiusString));
+	}
+
+	/**
+	 * Airports inside the radius of the given one, none for a zero radius.
+	 */
+	private Stream<AirportData> near(AirportData center, double radius)
+	{
+		if (Double.compare(radius, MIN_RADIUS) <= 0)
+			return Stream.empty();
+		return repo.streamAirportsNear(center, radius);
+	}
+
+	/**
+	 * Atmospheric information of the airports inside the radius of the given one, none for a zero radius.
+	 */
+	private Stream<AtmosphericInformation> nearWeather(AirportData center, double radius)
+	{
+		if (Double.compare(radius, MIN_RADIUS) <= 0)
+			return Stream.empty();
+		return repo.streamWeatherNear(center, radius);
+	}
+
+	/**
+	 * Retrieve the data points of a type collected for the given airport, in a period of time.
+	 *
+	 * @param iata the three letter airport code
+	 * @param pointType the point type
+	 * @param from start of the period in millis since epoch, inclusive. All the history if not present
+	 * @param to end of the period in millis since epoch, inclusive. Until now if not present
+	 *
+	 * @return an HTTP Response and a list of {@link HistoricDataPoint}, oldest first
+	 */
+	@Override
+	@GET
+	@Path("/history/{iata}/{pointType}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response history(@PathParam("iata") String iata, @PathParam("pointType") String pointType,
+			@QueryParam("from") Long from, @QueryParam("to") Long to)
+	{
+		Optional<DataPointType> type = DataPointType.find(pointType);
+		if (!type.isPresent())
+			return Response.status(Response.Status.NOT_FOUND).build();
+
+		Optional<List<HistoricDataPoint>> retval = repo.findHistory(iata, type.get(),
+				from == null ? Long.MIN_VALUE : from, to == null ? Long.MAX_VALUE : to);
+		if (!retval.isPresent())
+			return Response.status(Response.Status.NOT_FOUND).build();
 
+		return Response.status(Response.Status.OK).entity(retval.get()).build();
+	}
+
+	/**
+	 * Retrieve the number of data points kept on the history of the given airport and the memory they use.
+	 *
+	 * @param iata the three letter airport code
+	 *
+	 * @return an HTTP Response and a JSON formatted dict with the history size
+	 */
+	@Override
+	@GET
+	@Path("/history/{iata}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response historySize(@PathParam("iata") String iata)
+	{
+		Optional<Map<DataPointType, Integer>> points = repo.getHistorySize(iata);
+		OptionalLong bytes = repo.getHistoryFootprint(iata);
+		if (!points.isPresent() || !bytes.isPresent())
+			return Response.status(Response.Status.NOT_FOUND).build();
+
+		Map<String, Object> retval = new HashMap<>();
+		retval.put("points", points.get());
+		retval.put("bytes", bytes.getAsLong());
 		return Response.status(Response.Status.OK).entity(retval).build();
 	}
+
+	/**
+	 * A serialized ping response.
+	 */
+	private static class PingSnapshot
+	{
+		final String json;
+		final long time;
+		final int generation;
+
+		PingSnapshot(String json, long time, int generation)
+		{
+			this.json = json;
+			this.time = time;
+			this.generation = generation;
+		}
+	}
 }
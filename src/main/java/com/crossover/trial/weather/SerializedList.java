@@ -0,0 +1,40 @@
+package com.crossover.trial.weather;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A list along with its JSON serialization, written as is by
+ * {@link com.crossover.trial.weather.config.SerializedListWriter} so cached responses are not serialized again.
+ *
+ * @param <E> element type
+ */
+public final class SerializedList<E> extends AbstractList<E>
+{
+	private final List<E> values;
+
+	private final byte[] json;
+
+	public SerializedList(List<E> values, byte[] json)
+	{
+		this.values = values;
+		this.json = json;
+	}
+
+	public byte[] json()
+	{
+		return json;
+	}
+
+	@Override
+	public E get(int index)
+	{
+		return values.get(index);
+	}
+
+	@Override
+	public int size()
+	{
+		return values.size();
+	}
+}
@@ -0,0 +1,73 @@
+package com.crossover.trial.weather;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * A list whose elements are produced by a stream, written by
+ * {@link com.crossover.trial.weather.config.StreamedListWriter} as they are produced, so large responses are never held
+ * in memory. Accessing it as a list runs the stream once and keeps the elements.
+ *
+ * @param <E> element type
+ */
+public final class StreamedList<E> extends AbstractList<E>
+{
+	private final Supplier<Stream<E>> source;
+
+	// Single element of the list when the stream is empty
+	private final Supplier<E> ifEmpty;
+
+	private List<E> values;
+
+	public StreamedList(Supplier<Stream<E>> source, Supplier<E> ifEmpty)
+	{
+		this.source = source;
+		this.ifEmpty = ifEmpty;
+	}
+
+	/**
+	 * Runs the stream, passing each element to the action without keeping them.
+	 *
+	 * @param action receives the elements
+	 */
+	public void emit(Consumer<? super E> action)
+	{
+		boolean[] empty = { true };
+		try (Stream<E> s = source.get())
+		{
+			s.forEachOrdered(e -> {
+				empty[0] = false;
+				action.accept(e);
+			});
+		}
+		if (empty[0])
+			action.accept(ifEmpty.get());
+	}
+
+	@Override
+	public E get(int index)
+	{
+		return values().get(index);
+	}
+
+	@Override
+	public int size()
+	{
+		return values().size();
+	}
+
+	private synchronized List<E> values()
+	{
+		if (values == null)
+		{
+			List<E> retval = new ArrayList<>();
+			emit(retval::add);
+			values = retval;
+		}
+		return values;
+	}
+}
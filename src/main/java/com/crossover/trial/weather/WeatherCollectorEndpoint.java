@@ -1,16 +1,26 @@
 package com.crossover.trial.weather;
 
+import java.io.InputStream;
+
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import com.crossover.trial.weather.config.WireFormat;
 import com.crossover.trial.weather.model.AirportData;
 import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.ImportResult;
+import com.crossover.trial.weather.model.UpdateStatus;
 
 /**
  * The interface shared to airport weather collection systems.
@@ -32,7 +42,7 @@ public interface WeatherCollectorEndpoint
 
 	/**
 	 * Update the airports atmospheric information for a particular pointType with json formatted data point
-	 * information.
+	 * information. Same as {@link #updateWeather(String, String, MediaType, InputStream)} with the body already read.
 	 *
 	 * @param iataCode the 3 letter airport code
 	 * @param pointType the point type, {@link DataPointType} for a complete list
@@ -40,10 +50,60 @@ public interface WeatherCollectorEndpoint
 	 *
 	 * @return HTTP Response code
 	 */
+	Response updateWeather(String iataCode, String pointType, String datapointJson);
+
+	/**
+	 * Update the airports atmospheric information for a particular pointType with a data point, parsed as it's read.
+	 *
+	 * @param iataCode the 3 letter airport code
+	 * @param pointType the point type, {@link DataPointType} for a complete list
+	 * @param contentType media type of the body, smile or else json
+	 * @param body a dict containing mean, first, second, thrid and count keys
+	 *
+	 * @return HTTP Response code
+	 */
+	Response updateWeather(String iataCode, String pointType, MediaType contentType, InputStream body);
+
+	/**
+	 * Same as {@link #updateWeather(String, String, MediaType, InputStream)}, read and applied on the
+	 * {@link RequestExecutor} while the container thread is released.
+	 *
+	 * @param iataCode the 3 letter airport code
+	 * @param pointType the point type, {@link DataPointType} for a complete list
+	 * @param contentType media type of the body, smile or else json
+	 * @param body a dict containing mean, first, second, thrid and count keys
+	 * @param response resumed with the HTTP Response code
+	 */
 	@POST
 	@Path("/weather/{iata}/{pointType}")
-	Response updateWeather(@PathParam("iata") String iataCode, @PathParam("pointType") String pointType,
-			String datapointJson);
+	void updateWeather(@PathParam("iata") String iataCode, @PathParam("pointType") String pointType,
+			@HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body,
+			@Suspended AsyncResponse response);
+
+	/**
+	 * Update the atmospheric information of several airports at once. The body is either a json array or a stream of
+	 * new line delimited json objects, each one with iata, pointType and dataPoint keys, or the same encoded as smile.
+	 *
+	 * @param contentType media type of the body
+	 * @param body the updates
+	 * @return HTTP Response code and a json formatted list with the {@link UpdateStatus} of each update
+	 */
+	Response updateWeatherBatch(MediaType contentType, InputStream body);
+
+	/**
+	 * Same as {@link #updateWeatherBatch(MediaType, InputStream)}, read and applied on the {@link RequestExecutor}
+	 * while the container thread is released.
+	 *
+	 * @param contentType media type of the body
+	 * @param body the updates
+	 * @param response resumed with the HTTP Response code and the {@link UpdateStatus} of each update
+	 */
+	@POST
+	@Path("/weather/batch")
+	@Consumes({ MediaType.APPLICATION_JSON, "application/x-ndjson", WireFormat.SMILE })
+	@Produces(MediaType.APPLICATION_JSON)
+	void updateWeatherBatch(@HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body,
+			@Suspended AsyncResponse response);
 
 	/**
 	 * Return a list of known airports as a json formatted list
@@ -80,14 +140,36 @@ public interface WeatherCollectorEndpoint
 			@PathParam("long") String longString);
 
 	/**
-	 * Add a new airport to the known airport list.
+	 * Add a new airport to the known airport list. Same as {@link #addAirport(InputStream)} with the body already read.
+	 *
+	 * @param airportDataJson json formatted airport
+	 * @return HTTP Response code for the add operation
+	 */
+	Response addAirport(String airportDataJson);
+
+	/**
+	 * Add a new airport to the known airport list, parsed as it's read.
 	 *
-	 * @param new airport
+	 * @param body json formatted airport
 	 * @return HTTP Response code for the add operation
 	 */
 	@POST
 	@Path("/airport")
-	Response addAirport(String airportDataJson);
+	Response addAirport(InputStream body);
+
+	/**
+	 * Add or update many airports at once. The body is streamed, either as airports.dat formatted csv rows or as json
+	 * airports (array or new line delimited), and applied to the repository in chunks.
+	 *
+	 * @param contentType media type of the body
+	 * @param body the airports
+	 * @return HTTP Response code and a json formatted {@link ImportResult}
+	 */
+	@POST
+	@Path("/airports")
+	@Consumes({ "text/csv", "application/x-ndjson", MediaType.APPLICATION_JSON })
+	@Produces(MediaType.APPLICATION_JSON)
+	Response addAirports(@HeaderParam(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body);
 
 	/**
 	 * Remove an airport from the known airport list
@@ -4,10 +4,15 @@ import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import com.crossover.trial.weather.config.WireFormat;
 import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.HistoricDataPoint;
 
 /**
  * The query only API for the Weather Server App. This API is made available to the public internet.
@@ -37,10 +42,49 @@ public interface WeatherQueryEndpoint
 	 * @param radiusString the radius, in km, from which to collect weather data
 	 *
 	 * @return an HTTP Response and a list of {@link AtmosphericInformation} from the requested airport and airports in
-	 * the given radius
+	 * the given radius, json encoded unless smile is requested
+	 */
+	Response weather(String iata, String radiusString);
+
+	/**
+	 * Same as {@link #weather(String, String)}, computed and written on the {@link RequestExecutor} while the
+	 * container thread is released.
+	 *
+	 * @param iata the three letter airport code
+	 * @param radiusString the radius, in km, from which to collect weather data
+	 * @param response resumed with the HTTP Response
 	 */
 	@GET
 	@Path("/weather/{iata}/{radius}")
+	@Produces({ MediaType.APPLICATION_JSON, WireFormat.SMILE })
+	void weather(@PathParam("iata") String iata, @PathParam("radius") String radiusString,
+			@Suspended AsyncResponse response);
+
+	/**
+	 * Retrieve the data points of a type collected for the given airport, in a period of time.
+	 *
+	 * @param iata the three letter airport code
+	 * @param pointType the point type
+	 * @param from start of the period in millis since epoch, inclusive. All the history if not present
+	 * @param to end of the period in millis since epoch, inclusive. Until now if not present
+	 *
+	 * @return an HTTP Response and a list of {@link HistoricDataPoint}, oldest first
+	 */
+	@GET
+	@Path("/history/{iata}/{pointType}")
+	@Produces(MediaType.APPLICATION_JSON)
+	Response history(@PathParam("iata") String iata, @PathParam("pointType") String pointType,
+			@QueryParam("from") Long from, @QueryParam("to") Long to);
+
+	/**
+	 * Retrieve the number of data points kept on the history of the given airport and the memory they use.
+	 *
+	 * @param iata the three letter airport code
+	 *
+	 * @return an HTTP Response and a JSON formatted dict with the history size
+	 */
+	@GET
+	@Path("/history/{iata}")
 	@Produces(MediaType.APPLICATION_JSON)
-	Response weather(@PathParam("iata") String iata, @PathParam("radius") String radiusString);
+	Response historySize(@PathParam("iata") String iata);
 }
@@ -0,0 +1,303 @@
+package com.crossover.trial.weather;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repo.RepositoryListener;
+import com.crossover.trial.weather.repo.WeatherRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded cache of the serialized responses of the radius queries, keyed by airport and radius. Each entry records the
+ * airports inside its radius and is invalidated when a data point of any of them is collected. Adding or deleting an
+ * airport, or resetting the repository, invalidates every entry. Entries are evicted with a second chance policy.
+ */
+@Slf4j
+@Component
+public class WeatherResponseCache implements RepositoryListener, InitializingBean
+{
+	@Autowired private WeatherRepository repo;
+
+	@Autowired private ObjectMapper mapper;
+
+	// Max number of cached responses, 0 disables the cache
+	@Value("${weather.query-cache.size:1024}") private int capacity;
+
+	// Larger radius queries are not cached, their responses are big and invalidated often
+	@Value("${weather.query-cache.max-radius:1000}") private double maxRadius = 1000;
+
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	// Airport -> keys of the entries including it
+	private final Map<String, Set<Key>> dependents = new ConcurrentHashMap<>();
+
+	// Sequence of the invalidations, and the last one of each airport and of the whole cache
+	private final AtomicLong sequence = new AtomicLong();
+	private final Map<String, Long> invalidated = new ConcurrentHashMap<>();
+	private volatile long invalidatedAll;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	// Compact writer, cached responses are sent as is
+	private ObjectWriter writer;
+
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		writer = mapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+		repo.addListener(this);
+	}
+
+	/**
+	 * Whether the responses of a radius are cached.
+	 *
+	 * @param radius radius of the query
+	 * @return true if cached
+	 */
+	public boolean isCacheable(double radius)
+	{
+		return capacity > 0 && radius <= maxRadius;
+	}
+
+	/**
+	 * Gets the response of a radius query, loading and caching it on a miss.
+	 *
+	 * @param iata IATA code of the reference airport
+	 * @param radius radius of the query
+	 * @param loader builds the response, adding to the given set the IATA codes of the airports it depends on
+	 * @return response
+	 */
+	public List<AtmosphericInformation> get(String iata, double radius,
+			Function<Set<String>, List<AtmosphericInformation>> loader)
+	{
+		if (capacity <= 0)
+			return loader.apply(new HashSet<>());
+
+		Key key = new Key(normalize(iata), radius);
+		int generation = repo.getGeneration();
+
+		Entry entry = entries.get(key);
+		if (entry != null && entry.generation == generation)
+		{
+			entry.referenced = true;
+			hits.increment();
+			return entry.value;
+		}
+		misses.increment();
+		if (entry != null)
+			remove(key, entry);
+
+		// Any invalidation after this point may have been missed by the loader
+		long start = sequence.get();
+
+		Set<String> dependsOn = new HashSet<>();
+		List<AtmosphericInformation> value = loader.apply(dependsOn);
+
+		SerializedList<AtmosphericInformation> retval;
+		try
+		{
+			retval = new SerializedList<>(value, writer.writeValueAsBytes(value));
+		}
+		catch (JsonProcessingException e)
+		{
+			log.error("Weather cache error: {}", e.getMessage());
+			return value;
+		}
+
+		entry = new Entry(retval, generation, dependsOn);
+		entries.put(key, entry);
+		for (String d : dependsOn)
+		{
+			dependents.compute(normalize(d), (k, keys) -> {
+				Set<Key> s = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+				s.add(key);
+				return s;
+			});
+		}
+
+		// Registered before checking, so either the invalidation finds the entry or the entry finds the invalidation
+		if (invalidatedAll > start
+				|| dependsOn.stream().anyMatch(d -> invalidated.getOrDefault(normalize(d), 0L) > start))
+			remove(key, entry);
+
+		if (entries.size() > capacity)
+			evict();
+		return retval;
+	}
+
+	/**
+	 * @return hits, misses, evictions, invalidations and size of the cache
+	 */
+	public Map<String, Long> getStats()
+	{
+		Map<String, Long> retval = new LinkedHashMap<>();
+		retval.put("hits", hits.sum());
+		retval.put("misses", misses.sum());
+		retval.put("evictions", evictions.sum());
+		retval.put("invalidations", invalidations.sum());
+		retval.put("size", (long) entries.size());
+		return retval;
+	}
+
+	@Override
+	public void dataPointAdded(String iata, DataPointType pointType, DataPoint dp, long time)
+	{
+		if (capacity <= 0)
+			return;
+
+		String k = normalize(iata);
+		invalidated.put(k, sequence.incrementAndGet());
+
+		Set<Key> keys = dependents.remove(k);
+		if (keys != null)
+		{
+			for (Key key : keys)
+			{
+				Entry entry = entries.get(key);
+				if (entry != null && remove(key, entry))
+					invalidations.increment();
+			}
+		}
+	}
+
+	@Override
+	public void airportAdded(AirportData ad)
+	{
+		invalidateAll();
+	}
+
+	@Override
+	public void airportDeleted(String iata)
+	{
+		invalidated.remove(normalize(iata));
+		invalidateAll();
+	}
+
+	private void invalidateAll()
+	{
+		if (capacity <= 0)
+			return;
+
+		invalidatedAll = sequence.incrementAndGet();
+		for (Map.Entry<Key, Entry> e : entries.entrySet())
+		{
+			if (remove(e.getKey(), e.getValue()))
+				invalidations.increment();
+		}
+	}
+
+	/**
+	 * Second chance eviction: entries read since the last pass are kept once.
+	 */
+	private void evict()
+	{
+		for (int pass = 0; pass < 2 && entries.size() > capacity; pass++)
+		{
+			Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+			while (it.hasNext() && entries.size() > capacity)
+			{
+				Map.Entry<Key, Entry> e = it.next();
+				if (e.getValue().referenced)
+					e.getValue().referenced = false;
+				else if (remove(e.getKey(), e.getValue()))
+					evictions.increment();
+			}
+		}
+	}
+
+	private boolean remove(Key key, Entry entry)
+	{
+		if (!entries.remove(key, entry))
+			return false;
+
+		for (String d : entry.dependsOn)
+		{
+			dependents.computeIfPresent(normalize(d), (k, keys) -> {
+				keys.remove(key);
+				return keys.isEmpty() ? null : keys;
+			});
+		}
+		return true;
+	}
+
+	private static String normalize(String iata)
+	{
+		return iata.trim().toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Airport and radius of a query.
+	 */
+	private static final class Key
+	{
+		final String iata;
+		final double radius;
+
+		Key(String iata, double radius)
+		{
+			this.iata = iata;
+			this.radius = radius;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return iata.equals(other.iata) && Double.compare(radius, other.radius) == 0;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * iata.hashCode() + Double.hashCode(radius);
+		}
+	}
+
+	/**
+	 * A cached response.
+	 */
+	private static final class Entry
+	{
+		final SerializedList<AtmosphericInformation> value;
+		final int generation;
+		final Set<String> dependsOn;
+
+		// Read since the last eviction pass
+		volatile boolean referenced;
+
+		Entry(SerializedList<AtmosphericInformation> value, int generation, Set<String> dependsOn)
+		{
+			this.value = value;
+			this.generation = generation;
+			this.dependsOn = dependsOn;
+		}
+	}
+}
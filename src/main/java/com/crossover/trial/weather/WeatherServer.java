@@ -35,13 +35,13 @@ public class WeatherServer implements InitializingBean
 	}
 
 	/**
-	 * Configure Jackson Json Mapper
+	 * Configure Jackson Json Mapper, compact output unless a request asks for pretty printing
 	 */
 	@Bean
 	public Jackson2ObjectMapperBuilder jacksonBuilder()
 	{
 		Jackson2ObjectMapperBuilder builder = new Jackson2ObjectMapperBuilder();
-		builder.indentOutput(true);
+		builder.indentOutput(false);
 		return builder;
 	}
 }
@@ -0,0 +1,184 @@
+package com.crossover.trial.weather.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.immutables.value.Value;
+
+import com.crossover.trial.weather.exceptions.WeatherException;
+
+/**
+ * Traffic generated by a {@link LoadGenerator}: an open loop of collect and query requests sent at a fixed rate,
+ * whatever the response times, over the airports known by the server.
+ */
+@Value.Immutable
+@Value.Style(typeImmutable = "")
+public abstract class AbstractLoadProfile
+{
+	@Value.Default
+	public String baseUri()
+	{
+		return "http://localhost:9090";
+	}
+
+	/**
+	 * @return requests per second
+	 */
+	@Value.Default
+	public double rate()
+	{
+		return 200;
+	}
+
+	@Value.Default
+	public int durationSeconds()
+	{
+		return 30;
+	}
+
+	/**
+	 * @return max number of requests in flight
+	 */
+	@Value.Default
+	public int concurrency()
+	{
+		return 16;
+	}
+
+	/**
+	 * @return share of the requests which are radius queries, the rest are data point updates
+	 */
+	@Value.Default
+	public double queryRatio()
+	{
+		return 0.8;
+	}
+
+	/**
+	 * @return radius of the queries -> relative weight
+	 */
+	@Value.Default
+	public Map<Double, Integer> radii()
+	{
+		Map<Double, Integer> retval = new LinkedHashMap<>();
+		retval.put(0.0, 50);
+		retval.put(100.0, 30);
+		retval.put(500.0, 15);
+		retval.put(2000.0, 5);
+		return retval;
+	}
+
+	/**
+	 * @return exponent of the Zipf distribution of the airports, 0 for uniform
+	 */
+	@Value.Default
+	public double skew()
+	{
+		return 1.0;
+	}
+
+	/**
+	 * @return whether to use the smile encoding instead of json
+	 */
+	@Value.Default
+	public boolean smile()
+	{
+		return false;
+	}
+
+	/**
+	 * @return steps of a {@link CapacitySearch}, each one with twice the rate and concurrency of the previous one
+	 */
+	@Value.Default
+	public int steps()
+	{
+		return 6;
+	}
+
+	/**
+	 * @return p99 latency, in millis, above which a {@link CapacitySearch} step is not sustained
+	 */
+	@Value.Default
+	public double maxP99Millis()
+	{
+		return 250;
+	}
+
+	@Value.Check
+	protected void check()
+	{
+		if (rate() <= 0 || durationSeconds() <= 0 || concurrency() <= 0 || steps() <= 0)
+			throw new WeatherException("Rate, duration, concurrency and steps must be positive");
+		if (queryRatio() < 0 || queryRatio() > 1)
+			throw new WeatherException("Query ratio not valid : " + queryRatio());
+		if (radii().isEmpty() || radii().values().stream().anyMatch(w -> w < 0))
+			throw new WeatherException("Radius weights not valid : " + radii());
+	}
+
+	/**
+	 * Parses a profile from command line options, {@code --name=value} with the names of the attributes in kebab
+	 * case. Radii are given as {@code --radii=radius:weight,...}. Unknown options are ignored.
+	 *
+	 * @param args command line
+	 * @return profile
+	 */
+	public static LoadProfile parse(String... args)
+	{
+		LoadProfile.Builder builder = LoadProfile.builder();
+		try
+		{
+			for (String arg : args)
+			{
+				int eq = arg.indexOf('=');
+				String name = eq < 0 ? arg : arg.substring(0, eq);
+				String value = eq < 0 ? "true" : arg.substring(eq + 1);
+				switch (name)
+				{
+					case "--base-uri":
+						builder.baseUri(value);
+						break;
+					case "--rate":
+						builder.rate(Double.parseDouble(value));
+						break;
+					case "--duration-seconds":
+						builder.durationSeconds(Integer.parseInt(value));
+						break;
+					case "--concurrency":
+						builder.concurrency(Integer.parseInt(value));
+						break;
+					case "--query-ratio":
+						builder.queryRatio(Double.parseDouble(value));
+						break;
+					case "--radii":
+						Map<Double, Integer> radii = new LinkedHashMap<>();
+						for (String r : value.split(","))
+						{
+							String[] parts = r.split(":");
+							radii.put(Double.valueOf(parts[0]), parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+						}
+						builder.radii(radii);
+						break;
+					case "--skew":
+						builder.skew(Double.parseDouble(value));
+						break;
+					case "--smile":
+						builder.smile(Boolean.parseBoolean(value));
+						break;
+					case "--steps":
+						builder.steps(Integer.parseInt(value));
+						break;
+					case "--max-p99-millis":
+						builder.maxP99Millis(Double.parseDouble(value));
+						break;
+					default:
+						break;
+				}
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			throw new WeatherException(e);
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,82 @@
+package com.crossover.trial.weather.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.crossover.trial.weather.metrics.LatencyHistogram;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds the load a server sustains: runs the {@link LoadGenerator} in steps, doubling the rate and the concurrency of
+ * the {@link LoadProfile} each time, until a step has more than 1% of errors or a p99 latency above
+ * {@link LoadProfile#maxP99Millis()}. The last step passed gives the max sustainable concurrency.
+ */
+@Slf4j
+public class CapacitySearch
+{
+	// Share of errors above which a step is not sustained
+	private static final double MAX_ERROR_RATIO = 0.01;
+
+	private final LoadProfile profile;
+
+	// Last sustained step, null if none
+	private LoadProfile sustained;
+
+	private final List<String> steps = new ArrayList<>();
+
+	public CapacitySearch(LoadProfile profile)
+	{
+		this.profile = profile;
+	}
+
+	/**
+	 * Runs the steps until one is not sustained.
+	 */
+	public void run()
+	{
+		LoadProfile step = profile;
+		for (int i = 0; i < profile.steps(); i++)
+		{
+			LoadGenerator load = new LoadGenerator(step);
+			load.run();
+
+			LatencyHistogram query = load.getQueryLatency();
+			LatencyHistogram collect = load.getCollectLatency();
+			long requests = query.count() + collect.count();
+			double p99 = Math.max(query.percentileMillis(99), collect.percentileMillis(99));
+			boolean passed = requests > 0 && load.getErrors() <= requests * MAX_ERROR_RATIO
+					&& p99 <= profile.maxP99Millis();
+
+			String line = String.format("concurrency %d, %.0f req/s: p99 %.2f ms, %d errors, %s", step.concurrency(),
+					step.rate(), p99, load.getErrors(), passed ? "sustained" : "not sustained");
+			log.info(line);
+			steps.add(line);
+
+			if (!passed)
+				break;
+			sustained = step;
+			step = step.withRate(step.rate() * 2).withConcurrency(step.concurrency() * 2);
+		}
+	}
+
+	/**
+	 * @return one line per step, and one with the max sustainable concurrency
+	 */
+	public List<String> report()
+	{
+		List<String> retval = new ArrayList<>(steps);
+		retval.add(sustained == null ? "no step sustained"
+				: String.format("max sustainable concurrency: %d (%.0f req/s)", sustained.concurrency(),
+						sustained.rate()));
+		return retval;
+	}
+
+	/**
+	 * @return last sustained step, null if none
+	 */
+	public LoadProfile getSustained()
+	{
+		return sustained;
+	}
+}
@@ -0,0 +1,314 @@
+package com.crossover.trial.weather.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.crossover.trial.weather.config.WireFormat;
+import com.crossover.trial.weather.exceptions.WeatherException;
+import com.crossover.trial.weather.metrics.LatencyHistogram;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drives a running weather server with the traffic of a {@link LoadProfile} and measures it end to end.
+ * <p>
+ * The loop is open: request i is due at start + i / rate and its latency is measured from that time, not from when a
+ * worker got to send it. When the server falls behind the requests queue up and the wait is part of their latency,
+ * so a slow server can't hide it by slowing the client down.
+ */
+@Slf4j
+public class LoadGenerator
+{
+	// Distinct bodies sent for each point type
+	private static final int BODIES_PER_TYPE = 64;
+
+	private final LoadProfile profile;
+
+	private final Client client;
+
+	private final WebTarget query;
+	private final WebTarget collect;
+
+	private final ObjectMapper mapper;
+	private final MediaType mediaType;
+
+	private final LatencyHistogram queryLatency = new LatencyHistogram();
+	private final LatencyHistogram collectLatency = new LatencyHistogram();
+	private final LongAdder errors = new LongAdder();
+
+	// Time the last response was received
+	private final AtomicLong lastCompletion = new AtomicLong();
+
+	private long start;
+
+	public LoadGenerator(LoadProfile profile)
+	{
+		this.profile = profile;
+
+		client = ClientBuilder.newClient();
+		query = client.target(profile.baseUri() + "/query");
+		collect = client.target(profile.baseUri() + "/collect");
+
+		mapper = profile.smile() ? WireFormat.smileMapper() : new ObjectMapper();
+		mediaType = profile.smile() ? WireFormat.SMILE_TYPE : MediaType.APPLICATION_JSON_TYPE;
+	}
+
+	/**
+	 * Sends the traffic and waits for every response, then closes the connections. Runs once.
+	 */
+	public void run()
+	{
+		try
+		{
+			send();
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+
+	private void send()
+	{
+		String[] airports = airports();
+		double[] airportCdf = zipf(airports.length, profile.skew());
+
+		double[] radii = new double[profile.radii().size()];
+		double[] radiusCdf = new double[radii.length];
+		int r = 0;
+		for (Map.Entry<Double, Integer> e : profile.radii().entrySet())
+		{
+			radii[r] = e.getKey();
+			radiusCdf[r] = (r == 0 ? 0 : radiusCdf[r - 1]) + e.getValue();
+			r++;
+		}
+
+		byte[][][] bodies = bodies();
+
+		Random random = new Random();
+		ExecutorService workers = Executors.newFixedThreadPool(profile.concurrency());
+		long duration = TimeUnit.SECONDS.toNanos(profile.durationSeconds());
+		double interval = TimeUnit.SECONDS.toNanos(1) / profile.rate();
+
+		log.info("Sending {} req/s for {} s to {}", profile.rate(), profile.durationSeconds(), profile.baseUri());
+		start = System.nanoTime();
+		lastCompletion.set(start);
+		for (long i = 0;; i++)
+		{
+			long due = start + (long) (i * interval);
+			if (due - start >= duration)
+				break;
+
+			// Picked on this thread, workers only send
+			String iata = airports[pick(airportCdf, random)];
+			Runnable request;
+			if (random.nextDouble() < profile.queryRatio())
+			{
+				double radius = radii[pick(radiusCdf, random)];
+				request = () -> query(iata, radius, due);
+			}
+			else
+			{
+				DataPointType type = DataPointType.values()[random.nextInt(DataPointType.values().length)];
+				byte[] body = bodies[type.ordinal()][random.nextInt(BODIES_PER_TYPE)];
+				request = () -> collect(iata, type, body, due);
+			}
+
+			long wait = due - System.nanoTime();
+			if (wait > 0)
+				LockSupport.parkNanos(wait);
+			workers.execute(request);
+		}
+
+		workers.shutdown();
+		try
+		{
+			if (!workers.awaitTermination(profile.durationSeconds() + 60L, TimeUnit.SECONDS))
+				workers.shutdownNow();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return one line per request type with throughput and latency percentiles, and one with the errors
+	 */
+	public List<String> report()
+	{
+		double seconds = (double) (lastCompletion.get() - start) / TimeUnit.SECONDS.toNanos(1);
+		List<String> retval = new ArrayList<>();
+		retval.add(report("query", queryLatency, seconds));
+		retval.add(report("collect", collectLatency, seconds));
+		retval.add(String.format("errors: %d", errors.sum()));
+		return retval;
+	}
+
+	public LatencyHistogram getQueryLatency()
+	{
+		return queryLatency;
+	}
+
+	public LatencyHistogram getCollectLatency()
+	{
+		return collectLatency;
+	}
+
+	/**
+	 * @return requests answered with an error or not answered at all
+	 */
+	public long getErrors()
+	{
+		return errors.sum();
+	}
+
+	private static String report(String name, LatencyHistogram h, double seconds)
+	{
+		return String.format("%s: %d requests, %.1f req/s, latency ms p50 %.2f p99 %.2f p99.9 %.2f max %.2f", name,
+				h.count(), seconds > 0 ? h.count() / seconds : 0, h.percentileMillis(50), h.percentileMillis(99),
+				h.percentileMillis(99.9), (double) h.max() / TimeUnit.MILLISECONDS.toNanos(1));
+	}
+
+	private void query(String iata, double radius, long due)
+	{
+		try
+		{
+			Response response = query.path("/weather/" + iata + "/" + radius).request(mediaType).get();
+			response.readEntity(byte[].class);
+			done(response.getStatus(), queryLatency, due);
+		}
+		catch (RuntimeException e)
+		{
+			done(-1, queryLatency, due);
+		}
+	}
+
+	private void collect(String iata, DataPointType type, byte[] body, long due)
+	{
+		try
+		{
+			Response response = collect.path("/weather/" + iata + "/" + type.name().toLowerCase())
+					.request()
+					.post(Entity.entity(body, mediaType));
+			int status = response.getStatus();
+			response.close();
+			done(status, collectLatency, due);
+		}
+		catch (RuntimeException e)
+		{
+			done(-1, collectLatency, due);
+		}
+	}
+
+	private void done(int status, LatencyHistogram latency, long due)
+	{
+		long now = System.nanoTime();
+		latency.record(now - due);
+		lastCompletion.accumulateAndGet(now, Math::max);
+		if (status != Response.Status.OK.getStatusCode())
+			errors.increment();
+	}
+
+	/**
+	 * @return codes of the airports known by the server
+	 */
+	private String[] airports()
+	{
+		try
+		{
+			String json = collect.path("/airports").request(MediaType.APPLICATION_JSON_TYPE).get(String.class);
+			List<String> codes = new ObjectMapper().readValue(json, new TypeReference<List<String>>() {});
+			if (codes.isEmpty())
+				throw new WeatherException("No airports to send the load to");
+
+			// Same popularity order on every run
+			String[] retval = codes.toArray(new String[codes.size()]);
+			Arrays.sort(retval);
+			return retval;
+		}
+		catch (IOException e)
+		{
+			throw new WeatherException(e);
+		}
+	}
+
+	/**
+	 * Encoded data points, inside the valid range of each type.
+	 */
+	private byte[][][] bodies()
+	{
+		Random random = new Random(42);
+		byte[][][] retval = new byte[DataPointType.values().length][BODIES_PER_TYPE][];
+		try
+		{
+			for (DataPointType type : DataPointType.values())
+			{
+				double base = type == DataPointType.PRESSURE ? 650 : 0;
+				for (int i = 0; i < BODIES_PER_TYPE; i++)
+				{
+					int first = (int) base + random.nextInt(30);
+					DataPoint dp = DataPoint.builder()
+							.first(first)
+							.second(first + random.nextInt(30))
+							.third(first + 30 + random.nextInt(30))
+							.mean(base + random.nextDouble() * 90)
+							.count(1 + random.nextInt(100))
+							.build();
+					retval[type.ordinal()][i] = mapper.writeValueAsBytes(dp);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			throw new WeatherException(e);
+		}
+		return retval;
+	}
+
+	/**
+	 * Cumulative weights of a Zipf distribution, the k-th element has a weight of 1 / k^s.
+	 */
+	private static double[] zipf(int n, double s)
+	{
+		double[] retval = new double[n];
+		double total = 0;
+		for (int k = 0; k < n; k++)
+		{
+			total += 1 / Math.pow(k + 1, s);
+			retval[k] = total;
+		}
+		return retval;
+	}
+
+	/**
+	 * Picks an index with the probabilities given by cumulative weights.
+	 */
+	private static int pick(double[] cdf, Random random)
+	{
+		int i = Arrays.binarySearch(cdf, random.nextDouble() * cdf[cdf.length - 1]);
+		return Math.min(i < 0 ? -i - 1 : i, cdf.length - 1);
+	}
+}
@@ -1,19 +1,32 @@
 package com.crossover.trial.weather.client;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import com.crossover.trial.weather.config.WireFormat;
 import com.crossover.trial.weather.exceptions.WeatherException;
+import com.crossover.trial.weather.model.AtmosphericInformation;
 import com.crossover.trial.weather.model.DataPoint;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * A reference implementation for the weather client. Consumers of the REST API can look at WeatherClient to understand
- * API semantics. This existing client populates the REST endpoint with dummy data useful for testing.
+ * API semantics. This existing client populates the REST endpoint with dummy data useful for testing. Run with
+ * {@code --smile} to send and receive the weather with the smile binary encoding instead of json, or with
+ * {@code --load} to drive the server with the {@link LoadGenerator} and print throughput and latencies, or with
+ * {@code --capacity} to find the max concurrency it sustains with a {@link CapacitySearch}. The other options are
+ * described on {@link LoadProfile#parse(String...)}.
  *
  * @author code test administrator
  */
@@ -28,11 +41,23 @@ public class WeatherClient
 	/** end point to supply updates */
 	private WebTarget collect;
 
+	/** smile encoder, null to use json */
+	private ObjectMapper smile;
+
 	public WeatherClient()
+	{
+		this(false);
+	}
+
+	/**
+	 * @param smile whether to use the smile encoding for the weather updates and queries
+	 */
+	public WeatherClient(boolean smile)
 	{
 		Client client = ClientBuilder.newClient();
 		query = client.target(BASE_URI + "/query");
 		collect = client.target(BASE_URI + "/collect");
+		this.smile = smile ? WireFormat.smileMapper() : null;
 	}
 
 	public void pingCollect()
@@ -45,8 +70,16 @@ public class WeatherClient
 	public void query(String iata)
 	{
 		WebTarget path = query.path("/weather/" + iata + "/0");
-		Response response = path.request().get();
-		log.info("query.{}.0: {}", iata, response.readEntity(String.class));
+		if (smile == null)
+		{
+			Response response = path.request().get();
+			log.info("query.{}.0: {}", iata, response.readEntity(String.class));
+		}
+		else
+		{
+			Response response = path.request(WireFormat.SMILE_TYPE).get();
+			log.info("query.{}.0: {}", iata, decode(response));
+		}
 	}
 
 	public void pingQuery()
@@ -60,7 +93,17 @@ public class WeatherClient
 	{
 		WebTarget path = collect.path("/weather/BOS/" + pointType);
 		DataPoint dp = DataPoint.builder().first(first).second(second).third(third).mean(mean).count(count).build();
-		path.request().post(Entity.entity(dp, "application/json"));
+		try
+		{
+			if (smile == null)
+				path.request().post(Entity.entity(dp, MediaType.APPLICATION_JSON));
+			else
+				path.request().post(Entity.entity(smile.writeValueAsBytes(dp), WireFormat.SMILE_TYPE));
+		}
+		catch (IOException e)
+		{
+			throw new WeatherException(e);
+		}
 	}
 
 	public void exit()
@@ -75,9 +118,53 @@ public class WeatherClient
 		}
 	}
 
+	private List<AtmosphericInformation> decode(Response response)
+	{
+		if (response.getStatus() != Response.Status.OK.getStatusCode())
+			throw new WeatherException("Query error: " + response.getStatus());
+
+		try
+		{
+			return smile.readValue(response.readEntity(byte[].class),
+					new TypeReference<List<AtmosphericInformation>>() {});
+		}
+		catch (IOException e)
+		{
+			throw new WeatherException(e);
+		}
+	}
+
 	public static void main(String[] args)
 	{
-		WeatherClient wc = new WeatherClient();
+		if (Arrays.asList(args).contains("--load"))
+		{
+			LoadProfile profile = LoadProfile.parse(args);
+
+			// Keeps a connection per worker alive, the default is 5 per server
+			if (System.getProperty("http.maxConnections") == null)
+				System.setProperty("http.maxConnections", String.valueOf(profile.concurrency()));
+
+			LoadGenerator load = new LoadGenerator(profile);
+			load.run();
+			load.report().forEach(log::info);
+			System.exit(0);
+		}
+
+		if (Arrays.asList(args).contains("--capacity"))
+		{
+			LoadProfile profile = LoadProfile.parse(args);
+
+			if (System.getProperty("http.maxConnections") == null)
+				System.setProperty("http.maxConnections",
+						String.valueOf((long) profile.concurrency() << (profile.steps() - 1)));
+
+			CapacitySearch search = new CapacitySearch(profile);
+			search.run();
+			search.report().forEach(log::info);
+			System.exit(0);
+		}
+
+		WeatherClient wc = new WeatherClient(Arrays.asList(args).contains("--smile"));
 		wc.pingCollect();
 		wc.populate("wind", 0, 10, 6, 4, 20);
 
@@ -1,10 +1,14 @@
 package com.crossover.trial.weather.config;
 
 import org.glassfish.jersey.server.ResourceConfig;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.crossover.trial.weather.RestMetricsEndpoint;
 import com.crossover.trial.weather.RestWeatherCollectorEndpoint;
 import com.crossover.trial.weather.RestWeatherQueryEndpoint;
+import com.crossover.trial.weather.metrics.EndpointMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Component
 public class JerseyConfig extends ResourceConfig
@@ -12,10 +16,16 @@ public class JerseyConfig extends ResourceConfig
 	/**
 	 * Configure Jersey on Spring Boot
 	 */
-	public JerseyConfig()
+	@Autowired
+	public JerseyConfig(ObjectMapper mapper, EndpointMetrics metrics)
 	{
 		register(RestWeatherCollectorEndpoint.class);
 		register(RestWeatherQueryEndpoint.class);
-		register(JerseyProbe.class);
+		register(RestMetricsEndpoint.class);
+		ObjectMapper smile = WireFormat.smileMapper();
+		register(new SerializedListWriter(mapper, smile));
+		register(new StreamedListWriter(mapper, smile));
+		register(PrettyPrintInterceptor.class);
+		register(new JerseyProbe(metrics));
 	}
 }
\ No newline at end of file
@@ -1,25 +1,163 @@
 package com.crossover.trial.weather.config;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
 
-import lombok.extern.slf4j.Slf4j;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.uri.UriTemplate;
 
-@Slf4j
-public class JerseyProbe implements ContainerRequestFilter
+import com.crossover.trial.weather.metrics.EndpointMetrics;
+import com.crossover.trial.weather.metrics.RouteMetrics;
+
+/**
+ * Times every request on the {@link EndpointMetrics} of its route, named after the matched method and path template.
+ * The request filter starts the timer, and the response filter stops it, or the writer interceptor once the entity
+ * is written, as the streamed responses do most of their work there. The outcome is logged for a sample of the
+ * requests.
+ * <p>
+ * Requests which match no route are counted on {@link #UNMATCHED}, without latency.
+ */
+@Priority(1)
+public class JerseyProbe implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor
 {
-	/**
-	 * logs each requests
-	 */
+	public static final String UNMATCHED = "unmatched";
+
+	// Request properties
+	private static final String ROUTE = JerseyProbe.class.getName() + ".route";
+	private static final String START = JerseyProbe.class.getName() + ".start";
+	private static final String STATUS = JerseyProbe.class.getName() + ".status";
+	private static final String SAMPLED = JerseyProbe.class.getName() + ".sampled";
+	private static final String COUNTED = JerseyProbe.class.getName() + ".counted";
+
+	private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final EndpointMetrics metrics;
+
+	// Route of each resource method, names are built once
+	private final Map<ResourceMethod, RouteMetrics> routes = new ConcurrentHashMap<>();
+
+	public JerseyProbe(EndpointMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
 	@Override
 	public void filter(ContainerRequestContext req) throws IOException
 	{
-		int pos = req.getUriInfo().getBaseUri().toString().length() - 1;
+		ExtendedUriInfo uriInfo = (ExtendedUriInfo) req.getUriInfo();
+		ResourceMethod method = uriInfo.getMatchedResourceMethod();
+		if (method == null)
+			return;
+
+		RouteMetrics route = routes.get(method);
+		if (route == null)
+			route = routes.computeIfAbsent(method, m -> metrics.route(name(req.getMethod(), uriInfo)));
+
+		route.started();
+		req.setProperty(ROUTE, route);
+		req.setProperty(START, System.nanoTime());
+	}
+
+	@Override
+	public void filter(ContainerRequestContext req, ContainerResponseContext res) throws IOException
+	{
+		// Error pages are dispatched again to the container, with the properties of the failed request
+		if (req.getProperty(COUNTED) != null)
+			return;
+		req.setProperty(COUNTED, Boolean.TRUE);
 
-		String query = req.getUriInfo().getRequestUri().toString().substring(pos);
+		if (metrics.sample())
+			req.setProperty(SAMPLED, req.getMethod() + " " + req.getUriInfo().getRequestUri().getPath());
 
-		log.info(query);
+		RouteMetrics route = (RouteMetrics) req.getProperty(ROUTE);
+		if (route == null)
+		{
+			metrics.route(UNMATCHED).count(res.getStatus());
+			log(req.getProperty(SAMPLED), res.getStatus(), -1);
+		}
+		else if (res.hasEntity() && !HttpMethod.HEAD.equals(req.getMethod()))
+		{
+			// Finished once written
+			req.setProperty(STATUS, res.getStatus());
+		}
+		else
+		{
+			finish(route, req.getProperty(START), res.getStatus(), req.getProperty(SAMPLED));
+		}
+	}
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException
+	{
+		try
+		{
+			context.proceed();
+		}
+		finally
+		{
+			RouteMetrics route = (RouteMetrics) context.getProperty(ROUTE);
+			Object status = context.getProperty(STATUS);
+			if (route != null && status != null)
+			{
+				context.removeProperty(STATUS);
+				finish(route, context.getProperty(START), (Integer) status, context.getProperty(SAMPLED));
+			}
+		}
+	}
+
+	private void finish(RouteMetrics route, Object start, int status, Object request)
+	{
+		long nanos = System.nanoTime() - (Long) start;
+		route.finished(status, nanos);
+		log(request, status, nanos);
+	}
+
+	/**
+	 * Logs a sampled request, the line is formatted on the log thread.
+	 *
+	 * @param request method and path, null if not sampled
+	 * @param status status code of the response
+	 * @param nanos latency, negative if not timed
+	 */
+	private void log(Object request, int status, long nanos)
+	{
+		if (request != null)
+		{
+			metrics.log(() -> nanos < 0 ? String.format("%s %d", request, status)
+					: String.format("%s %d %.2f ms", request, status, (double) nanos / NANOS_PER_MILLI));
+		}
+	}
+
+	/**
+	 * @return http method and the matched path templates, from the resource class to the method
+	 */
+	private static String name(String method, ExtendedUriInfo uriInfo)
+	{
+		List<UriTemplate> templates = uriInfo.getMatchedTemplates();
+		StringBuilder retval = new StringBuilder(method).append(' ');
+		for (int i = templates.size() - 1; i >= 0; i--)
+		{
+			String t = templates.get(i).getTemplate();
+			if (t.isEmpty() || "/".equals(t))
+				continue;
+			if (retval.charAt(retval.length() - 1) != '/' && !t.startsWith("/"))
+				retval.append('/');
+			retval.append(t);
+		}
+		return retval.toString();
 	}
 }
@@ -0,0 +1,61 @@
+package com.crossover.trial.weather.config;
+
+import java.io.IOException;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.jaxrs.cfg.EndpointConfigBase;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterInjector;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterModifier;
+
+/**
+ * Indents the JSON responses of the requests with a {@code pretty=true} query parameter, responses are compact
+ * otherwise. The indentation is requested through the {@link ObjectWriterInjector} of the Jackson provider, which the
+ * list writers honour as well.
+ */
+public class PrettyPrintInterceptor implements WriterInterceptor
+{
+	public static final String PARAM = "pretty";
+
+	private static final ObjectWriterModifier INDENT = new ObjectWriterModifier()
+	{
+		@Override
+		public ObjectWriter modify(EndpointConfigBase<?> endpoint, MultivaluedMap<String, Object> responseHeaders,
+				Object valueToWrite, ObjectWriter w, JsonGenerator g) throws IOException
+		{
+			g.useDefaultPrettyPrinter();
+			return w.with(SerializationFeature.INDENT_OUTPUT);
+		}
+	};
+
+	@Context private UriInfo uriInfo;
+
+	@Override
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException
+	{
+		if (!Boolean.parseBoolean(uriInfo.getQueryParameters().getFirst(PARAM)))
+		{
+			context.proceed();
+			return;
+		}
+
+		ObjectWriterInjector.set(INDENT);
+		try
+		{
+			context.proceed();
+		}
+		finally
+		{
+			// Not consumed if the entity was written by another writer
+			ObjectWriterInjector.getAndClear();
+		}
+	}
+}
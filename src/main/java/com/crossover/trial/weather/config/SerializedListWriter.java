@@ -0,0 +1,79 @@
+package com.crossover.trial.weather.config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.crossover.trial.weather.SerializedList;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterInjector;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterModifier;
+
+/**
+ * Writes the JSON already held by a {@link SerializedList}, unless the request asks for Smile or for a different output
+ * through the {@link ObjectWriterInjector}.
+ */
+@Provider
+@Produces({ MediaType.APPLICATION_JSON, WireFormat.SMILE })
+public class SerializedListWriter implements MessageBodyWriter<SerializedList<?>>
+{
+	private final ObjectMapper mapper;
+
+	private final ObjectMapper smile;
+
+	public SerializedListWriter(ObjectMapper mapper, ObjectMapper smile)
+	{
+		this.mapper = mapper;
+		this.smile = smile;
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+	{
+		return SerializedList.class.isAssignableFrom(type);
+	}
+
+	@Override
+	public long getSize(SerializedList<?> t, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType)
+	{
+		// Unknown when the list is written again
+		return ObjectWriterInjector.get() == null && !WireFormat.SMILE_TYPE.isCompatible(mediaType) ? t.json().length
+				: -1;
+	}
+
+	@Override
+	public void writeTo(SerializedList<?> t, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+			throws IOException, WebApplicationException
+	{
+		ObjectWriterModifier modifier = ObjectWriterInjector.getAndClear();
+		boolean binary = WireFormat.SMILE_TYPE.isCompatible(mediaType);
+		if (modifier == null && !binary)
+		{
+			entityStream.write(t.json());
+			return;
+		}
+
+		ObjectMapper m = binary ? smile : mapper;
+		try (JsonGenerator g = m.getFactory().createGenerator(entityStream))
+		{
+			g.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+			ObjectWriter w = m.writer();
+			if (modifier != null)
+				w = modifier.modify(null, httpHeaders, t, w, g);
+			w.writeValue(g, t);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.crossover.trial.weather.config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.crossover.trial.weather.StreamedList;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterInjector;
+import com.fasterxml.jackson.jaxrs.cfg.ObjectWriterModifier;
+
+/**
+ * Writes a {@link StreamedList} as a JSON or Smile array, element by element as the stream produces them.
+ */
+@Provider
+@Produces({ MediaType.APPLICATION_JSON, WireFormat.SMILE })
+public class StreamedListWriter implements MessageBodyWriter<StreamedList<?>>
+{
+	private final ObjectMapper mapper;
+
+	private final ObjectMapper smile;
+
+	public StreamedListWriter(ObjectMapper mapper, ObjectMapper smile)
+	{
+		this.mapper = mapper;
+		this.smile = smile;
+	}
+
+	@Override
+	public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType)
+	{
+		return StreamedList.class.isAssignableFrom(type);
+	}
+
+	@Override
+	public long getSize(StreamedList<?> t, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType)
+	{
+		return -1;
+	}
+
+	@Override
+	public void writeTo(StreamedList<?> t, Class<?> type, Type genericType, Annotation[] annotations,
+			MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+			throws IOException, WebApplicationException
+	{
+		ObjectMapper m = WireFormat.SMILE_TYPE.isCompatible(mediaType) ? smile : mapper;
+		try (JsonGenerator g = m.getFactory().createGenerator(entityStream))
+		{
+			g.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+			// Flushing is left to the container, once per buffer instead of once per element
+			ObjectWriter w = m.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+			ObjectWriterModifier modifier = ObjectWriterInjector.getAndClear();
+			if (modifier != null)
+				w = modifier.modify(null, httpHeaders, t, w, g);
+
+			// Shares the serializers between the elements
+			try (SequenceWriter array = w.writeValuesAsArray(g))
+			{
+				t.emit(e -> {
+					try
+					{
+						array.write(e);
+					}
+					catch (IOException ex)
+					{
+						throw new UncheckedIOException(ex);
+					}
+				});
+			}
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.crossover.trial.weather.config;
+
+import javax.ws.rs.core.MediaType;
+
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Encodings of the weather endpoints besides JSON, the default. Smile is a binary encoding of the JSON data model,
+ * cheaper to parse and smaller on the wire, negotiated through the Content-Type and Accept headers.
+ */
+public final class WireFormat
+{
+	public static final String SMILE = "application/x-jackson-smile";
+
+	public static final MediaType SMILE_TYPE = MediaType.valueOf(SMILE);
+
+	private WireFormat()
+	{}
+
+	/**
+	 * @return a new mapper of the Smile encoding, with the same defaults as the JSON one
+	 */
+	public static ObjectMapper smileMapper()
+	{
+		ObjectMapper retval = new ObjectMapper(new SmileFactory());
+		new Jackson2ObjectMapperBuilder().configure(retval);
+		return retval;
+	}
+}
@@ -3,24 +3,46 @@ package com.crossover.trial.weather.loader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Iterator;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
-import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 
 import com.crossover.trial.weather.exceptions.WeatherException;
 import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.ImportResult;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * A simple airport loader which reads a file from disk and sends entries to the webservice
+ * A simple airport loader which reads a file from disk and sends entries to the webservice. The file is streamed to
+ * the bulk import endpoint when the server has it, otherwise airports are uploaded one by one through a pipeline of
+ * concurrent workers.
  * 
  * @author code test administrator
  */
@@ -29,9 +51,39 @@ public class AirportLoader
 {
 	private static final String BASE_SERVER = "http://localhost:9090";
 	private static final String OK = "OK";
-	private static final int RECORDS_IN_A_ROW = 11;
+	private static final String CSV = "text/csv";
+	private static final int BUFFER_SIZE = 8192;
 
-	private final WebTarget collect = ClientBuilder.newClient().target(BASE_SERVER + "/collect");
+	private static final int DEFAULT_WORKERS = 8;
+
+	// Parsed rows waiting for a worker, per worker
+	private static final int QUEUE_PER_WORKER = 16;
+
+	// Max time the parser waits for room on the queue before checking the workers are alive
+	private static final long LIVENESS_MILLIS = 100;
+
+	private static final int MAX_RETRIES = 3;
+	private static final long BACKOFF_MILLIS = 100;
+
+	// One client shared by every worker, so connections are kept alive and reused.
+	// Chunked transfer, so the file is never fully loaded in memory
+	private final WebTarget collect = ClientBuilder
+			.newClient(new ClientConfig().property(ClientProperties.REQUEST_ENTITY_PROCESSING,
+					RequestEntityProcessing.CHUNKED))
+			.target(BASE_SERVER + "/collect");
+
+	// Number of concurrent uploads of the pipelined mode
+	private final int workers;
+
+	public AirportLoader()
+	{
+		this(DEFAULT_WORKERS);
+	}
+
+	public AirportLoader(int workers)
+	{
+		this.workers = workers;
+	}
 
 	public static void main(String[] args) throws IOException
 	{
@@ -44,7 +96,7 @@ public class AirportLoader
 				System.exit(1);
 			}
 
-			AirportLoader al = new AirportLoader();
+			AirportLoader al = args.length > 1 ? new AirportLoader(Integer.parseInt(args[1])) : new AirportLoader();
 			al.upload(new FileReader(airportDataFile));
 
 			System.exit(0);
@@ -60,91 +112,232 @@ public class AirportLoader
 	 * Uploads the file
 	 * 
 	 * @param in FileReader with the file to be uploaded
+	 * @return summary of the upload
 	 */
-	public void upload(FileReader in) throws IOException
+	public ImportResult upload(FileReader in) throws IOException
 	{
-		CSVFormat csvFileFormat = CSVFormat.DEFAULT.withDelimiter(',')
-				.withIgnoreEmptyLines()
-				.withIgnoreSurroundingSpaces()
-				.withQuote('"')
-				.withSkipHeaderRecord();
+		ImportResult result = bulkImportSupported() ? uploadBulk(in) : uploadPipelined(in);
 
-		try (CSVParser parser = new CSVParser(in, csvFileFormat))
+		result.errors().forEach(e -> log.error("Airport rejected, {}", e));
+		log.info("{} airports loaded, {} rejected, {} rows/s.", result.accepted(), result.rejected(),
+				(result.accepted() + result.rejected()) * 1000 / Math.max(1, result.millis()));
+		return result;
+	}
+
+	/**
+	 * Streams the file to the bulk import endpoint.
+	 * 
+	 * @param in reader with the file to be uploaded
+	 * @return summary of the upload
+	 */
+	public ImportResult uploadBulk(Reader in) throws IOException
+	{
+		StreamingOutput body = out -> {
+			Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			char[] buffer = new char[BUFFER_SIZE];
+			for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+				writer.write(buffer, 0, n);
+			writer.flush();
+		};
+
+		try
 		{
-			Iterator<CSVRecord> it = parser.iterator();
-			while (it.hasNext())
+			Response post = collect.path("/airports").request(MediaType.APPLICATION_JSON).post(Entity.entity(body, CSV));
+			try
 			{
-				try
+				if (!post.getStatusInfo().getReasonPhrase().equalsIgnoreCase(OK))
+					throw new WeatherException("Airports upload fail : " + post.getStatusInfo().getReasonPhrase());
+
+				return post.readEntity(ImportResult.class);
+			}
+			finally
+			{
+				post.close();
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Uploads the airports one by one. This thread parses the file and feeds a bounded queue, which blocks the parsing
+	 * when the workers can't keep up, while the workers upload the airports concurrently. A worker dying on an
+	 * unexpected error fails the whole upload.
+	 * 
+	 * @param in reader with the file to be uploaded
+	 * @return summary of the upload
+	 */
+	public ImportResult uploadPipelined(Reader in) throws IOException
+	{
+		long start = System.currentTimeMillis();
+		BlockingQueue<Row> queue = new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER);
+		List<String> errors = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger accepted = new AtomicInteger();
+
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		List<Future<?>> running = new ArrayList<>(workers);
+		for (int i = 0; i < workers; i++)
+		{
+			running.add(pool.submit(() -> {
+				for (Row row = queue.take(); row != Row.END; row = queue.take())
 				{
-					CSVRecord record = it.next();
-					AirportData a = parseAirportRegistry(record);
-					uploadAirport(a);
+					try
+					{
+						uploadWithRetry(row.airport);
+						accepted.incrementAndGet();
+					}
+					catch (RuntimeException e)
+					{
+						errors.add("row " + row.number + ": " + e.getMessage());
+					}
+				}
+				return null;
+			}));
+		}
 
-					log.info("Airport {} loaded.", a.iata());
+		try (CSVParser parser = new CSVParser(in, AirportParser.FORMAT))
+		{
+			for (CSVRecord record : parser)
+			{
+				try
+				{
+					put(queue, new Row(record.getRecordNumber(), parseAirportRegistry(record)), running);
 				}
 				catch (WeatherException e)
 				{
-					log.error("Error parsing file.", e);
+					errors.add("row " + record.getRecordNumber() + ": " + e.getMessage());
 				}
 			}
+
+			for (int i = 0; i < workers; i++)
+				put(queue, Row.END, running);
+
+			for (Future<?> worker : running)
+				worker.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new WeatherException(e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new WeatherException(e);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+
+		return ImportResult.builder()
+				.accepted(accepted.get())
+				.rejected(errors.size())
+				.errors(errors)
+				.millis(System.currentTimeMillis() - start)
+				.build();
+	}
+
+	/**
+	 * Queues a row for the workers, failing if a worker died while the queue is full.
+	 *
+	 * @param queue rows to upload
+	 * @param row the row
+	 * @param running the workers
+	 * @throws ExecutionException if a worker died
+	 */
+	private static void put(BlockingQueue<Row> queue, Row row, List<Future<?>> running)
+			throws InterruptedException, ExecutionException
+	{
+		while (!queue.offer(row, LIVENESS_MILLIS, TimeUnit.MILLISECONDS))
+		{
+			// Workers only finish on the end rows, a finished worker either got one or died
+			for (Future<?> worker : running)
+			{
+				if (worker.isDone())
+					worker.get();
+			}
 		}
 	}
 
 	/**
-	 * Parse each line of the file
+	 * Check if the server has the bulk import endpoint.
 	 * 
-	 * @param record CSVRecord containing the fields of the record
+	 * @return true if airports can be posted in bulk
 	 */
-	protected AirportData parseAirportRegistry(CSVRecord record)
+	protected boolean bulkImportSupported()
 	{
-		if (record.size() == RECORDS_IN_A_ROW)
+		try
 		{
-			AirportData.Builder a = AirportData.builder();
-			a.name(record.get(1));
-			a.city(record.get(2));
-			a.country(record.get(3));
-			a.iata(record.get(4));
-			a.icao(record.get(5));
-			a.lat(checkDouble("Latitude", record.get(6)));
-			a.lon(checkDouble("Longitude", record.get(7)));
-			a.alt(checkDouble("Altitude", record.get(8)));
-			a.timezone(checkDouble("Timezone", record.get(9)));
-			a.dst(record.get(10));
-
-			return a.build();
+			Response options = collect.path("/airports").request().options();
+			options.close();
+			return options.getAllowedMethods().contains("POST");
+		}
+		catch (ProcessingException e)
+		{
+			return false;
 		}
-		else
-			throw new WeatherException("Invalid number of records on row " + record.toString());
 	}
 
 	/**
-	 * Upload a airport definition
+	 * Parse each line of the file
 	 * 
-	 * @param a the airport
+	 * @param record CSVRecord containing the fields of the record
 	 */
-	protected void uploadAirport(AirportData a)
+	protected AirportData parseAirportRegistry(CSVRecord record)
 	{
-		WebTarget path = collect.path("/airport");
-		Response post = path.request().post(Entity.entity(a, "application/json"));
-		if (!post.getStatusInfo().getReasonPhrase().equalsIgnoreCase(OK))
-			throw new WeatherException("Airport upload fail : " + post.getStatusInfo().getReasonPhrase());
+		return AirportParser.parse(record);
 	}
 
 	/**
-	 * Check if a string represents a correct double
+	 * Upload a airport definition, retrying with exponential backoff when the server can't be reached or fails.
 	 * 
-	 * @param name name of the field
-	 * @param d string with the double
+	 * @param a the airport
 	 */
-	protected Double checkDouble(String name, String d)
+	protected void uploadWithRetry(AirportData a) throws InterruptedException
 	{
-		try
+		for (int attempt = 0;; attempt++)
 		{
-			return Double.parseDouble(d);
+			String error;
+			try
+			{
+				Response post = collect.path("/airport").request().post(Entity.entity(a, MediaType.APPLICATION_JSON));
+				post.close();
+				if (post.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL)
+					return;
+				if (post.getStatusInfo().getFamily() != Response.Status.Family.SERVER_ERROR)
+					throw new WeatherException("Airport upload fail : " + post.getStatusInfo().getReasonPhrase());
+
+				error = post.getStatusInfo().getReasonPhrase();
+			}
+			catch (ProcessingException e)
+			{
+				error = e.getMessage();
+			}
+
+			if (attempt == MAX_RETRIES)
+				throw new WeatherException("Airport upload fail after " + attempt + " retries : " + error);
+
+			log.warn("Airport {} upload fail, retrying : {}", a.iata(), error);
+			Thread.sleep(BACKOFF_MILLIS << attempt);
 		}
-		catch (NumberFormatException nfe)
+	}
+
+	/**
+	 * A parsed row of the file.
+	 */
+	private static class Row
+	{
+		static final Row END = new Row(-1, null);
+
+		final long number;
+		final AirportData airport;
+
+		Row(long number, AirportData airport)
 		{
-			throw new WeatherException(name + " value not valid : " + d);
+			this.number = number;
+			this.airport = airport;
 		}
 	}
 }
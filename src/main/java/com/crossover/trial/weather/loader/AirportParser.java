@@ -0,0 +1,71 @@
+package com.crossover.trial.weather.loader;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+
+import com.crossover.trial.weather.exceptions.WeatherException;
+import com.crossover.trial.weather.model.AirportData;
+
+/**
+ * Parser of the airports.dat rows, shared by the loader and the bulk import endpoint.
+ *
+ * @author code test administrator
+ */
+public final class AirportParser
+{
+	public static final int RECORDS_IN_A_ROW = 11;
+
+	public static final CSVFormat FORMAT = CSVFormat.DEFAULT.withDelimiter(',')
+			.withIgnoreEmptyLines()
+			.withIgnoreSurroundingSpaces()
+			.withQuote('"')
+			.withSkipHeaderRecord();
+
+	private AirportParser()
+	{}
+
+	/**
+	 * Parse each line of the file
+	 * 
+	 * @param record CSVRecord containing the fields of the record
+	 */
+	public static AirportData parse(CSVRecord record)
+	{
+		if (record.size() == RECORDS_IN_A_ROW)
+		{
+			AirportData.Builder a = AirportData.builder();
+			a.name(record.get(1));
+			a.city(record.get(2));
+			a.country(record.get(3));
+			a.iata(record.get(4));
+			a.icao(record.get(5));
+			a.lat(checkDouble("Latitude", record.get(6)));
+			a.lon(checkDouble("Longitude", record.get(7)));
+			a.alt(checkDouble("Altitude", record.get(8)));
+			a.timezone(checkDouble("Timezone", record.get(9)));
+			a.dst(record.get(10));
+
+			return a.build();
+		}
+		else
+			throw new WeatherException("Invalid number of records on row " + record.toString());
+	}
+
+	/**
+	 * Check if a string represents a correct double
+	 * 
+	 * @param name name of the field
+	 * @param d string with the double
+	 */
+	public static Double checkDouble(String name, String d)
+	{
+		try
+		{
+			return Double.parseDouble(d);
+		}
+		catch (NumberFormatException nfe)
+		{
+			throw new WeatherException(name + " value not valid : " + d);
+		}
+	}
+}
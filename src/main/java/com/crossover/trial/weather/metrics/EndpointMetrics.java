@@ -0,0 +1,99 @@
+package com.crossover.trial.weather.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Metrics of every route of the REST API, fed by the {@code JerseyProbe}, and the sampled request log.
+ * <p>
+ * Only one request in {@code weather.metrics.log-every} is logged, and the line is built and written by a background
+ * thread. Lines are dropped if that thread falls behind, a request never waits on the log.
+ */
+@Slf4j
+@Component
+public class EndpointMetrics implements DisposableBean
+{
+	// Pending log lines, later ones are dropped
+	private static final int LOG_QUEUE = 1024;
+
+	// One request in this many is logged, 0 disables the request log
+	@Value("${weather.metrics.log-every:100}") private int logEvery = 100;
+
+	private final long started = System.nanoTime();
+
+	private final ConcurrentMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+
+	private final ExecutorService logger = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(LOG_QUEUE), r -> {
+				Thread t = new Thread(r, "request-log");
+				t.setDaemon(true);
+				return t;
+			}, new ThreadPoolExecutor.DiscardPolicy());
+
+	/**
+	 * Metrics of a route, created on first use.
+	 *
+	 * @param name route name, method and path template
+	 * @return metrics
+	 */
+	public RouteMetrics route(String name)
+	{
+		RouteMetrics retval = routes.get(name);
+		return retval != null ? retval : routes.computeIfAbsent(name, k -> new RouteMetrics());
+	}
+
+	/**
+	 * @return whether the current request should be logged
+	 */
+	public boolean sample()
+	{
+		return logEvery > 0 && (logEvery == 1 || ThreadLocalRandom.current().nextInt(logEvery) == 0);
+	}
+
+	/**
+	 * Logs a request line from the background thread.
+	 *
+	 * @param line builds the line
+	 */
+	public void log(Supplier<String> line)
+	{
+		logger.execute(() -> log.info(line.get()));
+	}
+
+	/**
+	 * @return uptime and the metrics of each route, by name
+	 */
+	public Map<String, Object> snapshot()
+	{
+		double seconds = (double) (System.nanoTime() - started) / TimeUnit.SECONDS.toNanos(1);
+
+		Map<String, Object> byRoute = new TreeMap<>();
+		routes.forEach((name, route) -> byRoute.put(name, route.toMap(seconds)));
+
+		Map<String, Object> retval = new LinkedHashMap<>();
+		retval.put("uptime_seconds", seconds);
+		retval.put("routes", byRoute);
+		return retval;
+	}
+
+	@Override
+	public void destroy()
+	{
+		logger.shutdown();
+	}
+}
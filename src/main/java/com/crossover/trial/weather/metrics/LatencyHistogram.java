@@ -0,0 +1,129 @@
+package com.crossover.trial.weather.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with log-linear buckets, as HdrHistogram does: values below 128 ns have a bucket each,
+ * above that every power of two is split in 64 buckets, so any latency is kept with a relative error under 1.6% in a
+ * fixed amount of memory. Recording is a couple of shifts and an atomic increment.
+ * <p>
+ * Percentiles are read while other threads record, so they may miss the latest values.
+ */
+public final class LatencyHistogram
+{
+	// Values below 2^SUB_BITS have their own bucket
+	private static final int SUB_BITS = 7;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int HALF_COUNT = SUB_COUNT / 2;
+
+	// Enough buckets for any positive long
+	private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos latency in nanoseconds, negative values count as 0
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.max(nanos, 0);
+		buckets.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * @return number of recorded latencies
+	 */
+	public long count()
+	{
+		return count.sum();
+	}
+
+	/**
+	 * @return mean latency in nanoseconds, 0 if none was recorded
+	 */
+	public double mean()
+	{
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @return highest latency in nanoseconds
+	 */
+	public long max()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Latency under which the given percentage of the recorded ones fall.
+	 *
+	 * @param percentile percentage, in [0, 100]
+	 * @return upper bound of the bucket holding the percentile in nanoseconds, 0 if none was recorded
+	 */
+	public long percentile(double percentile)
+	{
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += snapshot[i];
+			if (seen >= rank)
+				return Math.min(highestValue(i), max());
+		}
+		return max();
+	}
+
+	/**
+	 * Same as {@link #percentile(double)} in milliseconds.
+	 */
+	public double percentileMillis(double percentile)
+	{
+		return (double) percentile(percentile) / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static int index(long value)
+	{
+		if (value < SUB_COUNT)
+			return (int) value;
+
+		// Keeps the SUB_BITS most significant bits, the highest one is always set
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		return shift * HALF_COUNT + (int) (value >>> shift);
+	}
+
+	/**
+	 * @return highest value counted on a bucket
+	 */
+	private static long highestValue(int index)
+	{
+		if (index < SUB_COUNT)
+			return index;
+
+		int shift = index / HALF_COUNT - 1;
+		long sub = index - shift * HALF_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+}
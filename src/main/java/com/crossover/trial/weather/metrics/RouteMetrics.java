@@ -0,0 +1,100 @@
+package com.crossover.trial.weather.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a route: requests finished, requests in flight, responses per status code and latencies. Every update
+ * is a striped or atomic increment, nothing is locked on the request path.
+ */
+public final class RouteMetrics
+{
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder inFlight = new LongAdder();
+	private final ConcurrentMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * A request started.
+	 */
+	public void started()
+	{
+		inFlight.increment();
+	}
+
+	/**
+	 * A started request finished.
+	 *
+	 * @param status status code of the response
+	 * @param nanos time since the request started
+	 */
+	public void finished(int status, long nanos)
+	{
+		inFlight.decrement();
+		latency.record(nanos);
+		count(status);
+	}
+
+	/**
+	 * Counts a response to a request which was not timed.
+	 *
+	 * @param status status code of the response
+	 */
+	public void count(int status)
+	{
+		requests.increment();
+		LongAdder counter = statuses.get(status);
+		if (counter == null)
+			counter = statuses.computeIfAbsent(status, k -> new LongAdder());
+		counter.increment();
+	}
+
+	public long getRequests()
+	{
+		return requests.sum();
+	}
+
+	public long getInFlight()
+	{
+		return inFlight.sum();
+	}
+
+	public LatencyHistogram getLatency()
+	{
+		return latency;
+	}
+
+	/**
+	 * @param seconds time the route has been measured
+	 * @return requests, throughput, in flight, statuses and latency percentiles in millis
+	 */
+	public Map<String, Object> toMap(double seconds)
+	{
+		Map<String, Object> retval = new LinkedHashMap<>();
+		long n = requests.sum();
+		retval.put("requests", n);
+		retval.put("rate", seconds > 0 ? n / seconds : 0);
+		retval.put("in_flight", inFlight.sum());
+
+		Map<String, Long> status = new TreeMap<>();
+		statuses.forEach((code, count) -> status.put(String.valueOf(code), count.sum()));
+		retval.put("status", status);
+
+		Map<String, Double> millis = new LinkedHashMap<>();
+		millis.put("mean", latency.mean() / NANOS_PER_MILLI);
+		millis.put("p50", latency.percentileMillis(50));
+		millis.put("p90", latency.percentileMillis(90));
+		millis.put("p99", latency.percentileMillis(99));
+		millis.put("p99.9", latency.percentileMillis(99.9));
+		millis.put("max", latency.max() / NANOS_PER_MILLI);
+		retval.put("latency_ms", millis);
+		return retval;
+	}
+}
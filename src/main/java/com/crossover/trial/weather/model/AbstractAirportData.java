@@ -2,13 +2,13 @@ package com.crossover.trial.weather.model;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 
 import javax.annotation.Nullable;
 
 import org.immutables.value.Value;
 
 import com.crossover.trial.weather.exceptions.WeatherException;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
@@ -23,7 +23,6 @@ public abstract class AbstractAirportData
 	static final Double LAT_MAX = 90.0;
 	static final Double LON_MIN = -180.0;
 	static final Double LON_MAX = 180.0;
-	static final Double R = 6372.8;
 
 	public abstract String iata();
 
@@ -59,45 +58,28 @@ public abstract class AbstractAirportData
 		return AtmosphericInformation.builder().build();
 	}
 
-	public Optional<AirportData> withDataPointToAtmosphereInformation(DataPointType pointType, DataPoint point)
+	/**
+	 * Location of the airport with the values of the distance formulas precomputed, built on first use.
+	 *
+	 * @return location
+	 */
+	@JsonIgnore
+	@Value.Lazy
+	@Value.Auxiliary
+	public GeoPoint geoPoint()
 	{
-		Optional<AtmosphericInformation> ai;
-		Optional<DataPoint> dp = Optional.of(point);
-		switch (pointType)
-		{
-			case WIND:
-				ai = dp.filter(d -> d.mean() >= 0).map(atmosphericInformation()::withWind);
-				break;
-			case TEMPERATURE:
-				ai = dp.filter(d -> d.mean() >= -50 && d.mean() < 100).map(atmosphericInformation()::withTemperature);
-				break;
-			case HUMIDITY:
-				ai = dp.filter(d -> d.mean() >= 0 && d.mean() < 100).map(atmosphericInformation()::withHumidity);
-				break;
-			case PRESSURE:
-				ai = dp.filter(d -> d.mean() >= 650 && d.mean() < 800).map(atmosphericInformation()::withPressure);
-				break;
-			case CLOUDCOVER:
-				ai = dp.filter(d -> d.mean() >= 0 && d.mean() < 100).map(atmosphericInformation()::withCloudCover);
-				break;
-			case PRECIPITATION:
-				ai = dp.filter(d -> d.mean() >= 0 && d.mean() < 100).map(atmosphericInformation()::withPrecipitation);
-				break;
-			default:
-				return Optional.empty();
-		}
-
-		return ai.map(a -> AirportData.builder().from(this).atmosphericInformation(a).build());
+		return GeoPoint.of(lat(), lon());
 	}
 
+	/**
+	 * Great circle distance to another airport.
+	 *
+	 * @param ad airport
+	 * @return distance in km
+	 */
 	public double calculateDistanceTo(AirportData ad)
 	{
-		double deltaLat = Math.toRadians(ad.lat() - lat());
-		double deltaLon = Math.toRadians(ad.lon() - lon());
-		double a = Math.pow(Math.sin(deltaLat / 2), 2)
-				+ Math.pow(Math.sin(deltaLon / 2), 2) * Math.cos(lat()) * Math.cos(ad.lat());
-		double c = 2 * Math.asin(Math.sqrt(a));
-		return R * c;
+		return Geodesy.distance(geoPoint(), ad.geoPoint());
 	}
 
 	@Value.Check
@@ -0,0 +1,28 @@
+package com.crossover.trial.weather.model;
+
+import org.immutables.value.Value;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A data point collected in the past, with the time it was collected.
+ */
+@Value.Immutable
+@Value.Style(typeImmutable = "")
+@JsonSerialize(as = HistoricDataPoint.class)
+@JsonDeserialize(as = HistoricDataPoint.class)
+public interface AbstractHistoricDataPoint
+{
+	abstract long timestamp();
+
+	abstract int first();
+
+	abstract int second();
+
+	abstract int third();
+
+	abstract double mean();
+
+	abstract int count();
+}
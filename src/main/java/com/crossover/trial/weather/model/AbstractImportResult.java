@@ -0,0 +1,29 @@
+package com.crossover.trial.weather.model;
+
+import java.util.List;
+
+import org.immutables.value.Value;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Summary of a bulk airport import.
+ */
+@Value.Immutable
+@Value.Style(typeImmutable = "")
+@JsonSerialize(as = ImportResult.class)
+@JsonDeserialize(as = ImportResult.class)
+public interface AbstractImportResult
+{
+	abstract int accepted();
+
+	abstract int rejected();
+
+	/**
+	 * @return one message per rejected row, with its row number
+	 */
+	abstract List<String> errors();
+
+	abstract long millis();
+}
@@ -0,0 +1,22 @@
+package com.crossover.trial.weather.model;
+
+import org.immutables.value.Value;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A data point collected for an airport, as sent on batch updates.
+ */
+@Value.Immutable
+@Value.Style(typeImmutable = "")
+@JsonSerialize(as = WeatherUpdate.class)
+@JsonDeserialize(as = WeatherUpdate.class)
+public interface AbstractWeatherUpdate
+{
+	abstract String iata();
+
+	abstract String pointType();
+
+	abstract DataPoint dataPoint();
+}
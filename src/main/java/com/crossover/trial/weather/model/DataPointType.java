@@ -1,5 +1,8 @@
 package com.crossover.trial.weather.model;
 
+import java.util.Locale;
+import java.util.Optional;
+
 /**
  * The various types of data points we can collect.
  *
@@ -7,10 +10,49 @@ package com.crossover.trial.weather.model;
  */
 public enum DataPointType
 {
-	WIND,
-	TEMPERATURE,
-	HUMIDITY,
-	PRESSURE,
-	CLOUDCOVER,
-	PRECIPITATION
+	WIND(0, Double.POSITIVE_INFINITY),
+	TEMPERATURE(-50, 100),
+	HUMIDITY(0, 100),
+	PRESSURE(650, 800),
+	CLOUDCOVER(0, 100),
+	PRECIPITATION(0, 100);
+
+	// Valid range of the mean value, [min, max)
+	private final double min;
+	private final double max;
+
+	private DataPointType(double min, double max)
+	{
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Finds the point type by name, ignoring case.
+	 *
+	 * @param name point type name
+	 * @return point type or empty if not known
+	 */
+	public static Optional<DataPointType> find(String name)
+	{
+		try
+		{
+			return Optional.of(valueOf(name.toUpperCase(Locale.ROOT)));
+		}
+		catch (IllegalArgumentException | NullPointerException e)
+		{
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Check if a data point holds a valid value for this type.
+	 *
+	 * @param dp data point
+	 * @return true if the mean is inside the valid range
+	 */
+	public boolean accepts(DataPoint dp)
+	{
+		return dp.mean() >= min && dp.mean() < max;
+	}
 }
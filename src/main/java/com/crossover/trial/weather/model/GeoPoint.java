@@ -0,0 +1,45 @@
+package com.crossover.trial.weather.model;
+
+/**
+ * A location with the values the distance formulas need precomputed as primitives: latitude and longitude in radians
+ * and the cosine of the latitude.
+ */
+public final class GeoPoint
+{
+	final double lat;
+	final double lon;
+	final double cosLat;
+
+	private GeoPoint(double lat, double lon)
+	{
+		this.lat = lat;
+		this.lon = lon;
+		this.cosLat = Math.cos(lat);
+	}
+
+	/**
+	 * @param lat latitude in degrees
+	 * @param lon longitude in degrees
+	 * @return point
+	 */
+	public static GeoPoint of(double lat, double lon)
+	{
+		return new GeoPoint(Math.toRadians(lat), Math.toRadians(lon));
+	}
+
+	/**
+	 * @return latitude in radians
+	 */
+	public double lat()
+	{
+		return lat;
+	}
+
+	/**
+	 * @return longitude in radians
+	 */
+	public double lon()
+	{
+		return lon;
+	}
+}
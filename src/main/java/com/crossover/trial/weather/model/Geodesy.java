@@ -0,0 +1,59 @@
+package com.crossover.trial.weather.model;
+
+/**
+ * Distances over a spherical earth. The exact distance uses the haversine formula on precomputed {@link GeoPoint}s,
+ * without boxing nor {@link Math#pow}, and radius checks compare haversines so they skip the inverse functions.
+ */
+public final class Geodesy
+{
+	/**
+	 * Earth radius in km, the mean radius commonly used with the haversine formula.
+	 */
+	public static final double EARTH_RADIUS = 6372.8;
+
+	private Geodesy()
+	{}
+
+	/**
+	 * Great circle distance, haversine formula.
+	 *
+	 * @param a first point
+	 * @param b second point
+	 * @return distance in km
+	 */
+	public static double distance(GeoPoint a, GeoPoint b)
+	{
+		return 2 * EARTH_RADIUS * Math.asin(Math.sqrt(haversine(a, b)));
+	}
+
+	/**
+	 * Whether the great circle distance is less or equal than the radius. Points outside the latitude band of the
+	 * radius are rejected first, the latitude difference alone is a lower bound of the distance.
+	 *
+	 * @param a first point
+	 * @param b second point
+	 * @param radius distance in km
+	 * @return true if inside the radius
+	 */
+	public static boolean isWithin(GeoPoint a, GeoPoint b, double radius)
+	{
+		double angle = radius / EARTH_RADIUS;
+		if (angle >= Math.PI)
+			return true;
+		if (Math.abs(b.lat - a.lat) > angle)
+			return false;
+
+		double s = Math.sin(angle / 2);
+		return haversine(a, b) <= s * s;
+	}
+
+	/**
+	 * @return the haversine of the central angle between the points
+	 */
+	private static double haversine(GeoPoint a, GeoPoint b)
+	{
+		double sinLat = Math.sin((b.lat - a.lat) / 2);
+		double sinLon = Math.sin((b.lon - a.lon) / 2);
+		return Math.min(1, sinLat * sinLat + sinLon * sinLon * a.cosLat * b.cosLat);
+	}
+}
@@ -0,0 +1,13 @@
+package com.crossover.trial.weather.model;
+
+/**
+ * Outcome of a data point update.
+ */
+public enum UpdateStatus
+{
+	ACCEPTED,
+	UNKNOWN_AIRPORT,
+	UNKNOWN_POINT_TYPE,
+	OUT_OF_RANGE,
+	MALFORMED
+}
@@ -0,0 +1,203 @@
+package com.crossover.trial.weather.repo;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.GeoPoint;
+
+/**
+ * Internal state of an airport. The airport metadata lives on a row of the {@link AirportStore}, while the latest data
+ * point of each {@link DataPointType} is updated in place on the {@link LatestReadings}, so writers never copy the
+ * record and never lose each other updates. Every data point is also appended to the bounded history of its type.
+ */
+final class AirportRecord
+{
+	// Airport metadata
+	private final AirportStore store;
+
+	// Row of the airport on the store, also its identifier on the NeighbourGraph
+	private final int ordinal;
+
+	// Latest data point of each type
+	private final LatestReadings readings;
+
+	// History of each DataPointType, created on the first data point
+	private final AtomicReferenceArray<DataPointHistory> history;
+
+	// Number of data points kept on each history
+	private final int historyCapacity;
+
+	// Slot where the airport was last counted by the RecentDataCounter
+	private final AtomicLong recentSlot;
+
+	// Counters of the repository
+	private final RepositoryStats stats;
+
+	private volatile long lastUpdateTime;
+
+	AirportRecord(AirportStore store, LatestReadings readings, int ordinal, int historyCapacity, RepositoryStats stats)
+	{
+		this.store = store;
+		this.ordinal = ordinal;
+		this.readings = readings;
+		readings.allocate(ordinal);
+		this.history = new AtomicReferenceArray<>(DataPointType.values().length);
+		this.historyCapacity = historyCapacity;
+		this.recentSlot = new AtomicLong(RecentDataCounter.NONE);
+		this.stats = stats;
+	}
+
+	int ordinal()
+	{
+		return ordinal;
+	}
+
+	String iata()
+	{
+		return store.iata(ordinal);
+	}
+
+	String icao()
+	{
+		return store.icao(ordinal);
+	}
+
+	double lat()
+	{
+		return store.lat(ordinal);
+	}
+
+	double lon()
+	{
+		return store.lon(ordinal);
+	}
+
+	GeoPoint geoPoint()
+	{
+		return store.geoPoint(ordinal);
+	}
+
+	/**
+	 * Frees the readings and the store row of a deleted airport, once it's out of the indexes and the neighbour graph,
+	 * so a later airport can reuse its ordinal.
+	 */
+	void release()
+	{
+		readings.clear(ordinal);
+		store.remove(ordinal);
+	}
+
+	/**
+	 * Stores the data point as the latest one of its type.
+	 *
+	 * @param pointType the point type
+	 * @param dp the data point
+	 * @param now time of the update
+	 */
+	void update(DataPointType pointType, DataPoint dp, long now)
+	{
+		readings.set(ordinal, pointType, dp);
+		lastUpdateTime = now;
+
+		if (historyCapacity > 0)
+		{
+			DataPointHistory h = history.get(pointType.ordinal());
+			if (h == null)
+			{
+				DataPointHistory created = new DataPointHistory(historyCapacity, stats);
+				if (!history.compareAndSet(pointType.ordinal(), null, created))
+				{
+					stats.contended(RepositoryStats.Contention.HISTORY);
+					stats.historyResized(-created.footprint());
+				}
+				h = history.get(pointType.ordinal());
+			}
+			h.add(now, dp);
+		}
+	}
+
+	/**
+	 * Sets the latest data points from a previously saved state.
+	 *
+	 * @param info atmospheric information
+	 */
+	void restore(AtmosphericInformation info)
+	{
+		restore(DataPointType.WIND, info.wind());
+		restore(DataPointType.TEMPERATURE, info.temperature());
+		restore(DataPointType.HUMIDITY, info.humidity());
+		restore(DataPointType.PRESSURE, info.pressure());
+		restore(DataPointType.CLOUDCOVER, info.cloudCover());
+		restore(DataPointType.PRECIPITATION, info.precipitation());
+		lastUpdateTime = info.lastUpdateTime();
+	}
+
+	private void restore(DataPointType pointType, DataPoint dp)
+	{
+		if (dp != null)
+			readings.set(ordinal, pointType, dp);
+	}
+
+	/**
+	 * History of a point type.
+	 *
+	 * @param pointType the point type
+	 * @return history or null if no data point of the type was collected
+	 */
+	DataPointHistory history(DataPointType pointType)
+	{
+		return history.get(pointType.ordinal());
+	}
+
+	/**
+	 * @return estimated memory used by the histories of the airport, in bytes
+	 */
+	long historyFootprint()
+	{
+		long retval = 0;
+		for (DataPointType type : DataPointType.values())
+		{
+			DataPointHistory h = history(type);
+			if (h != null)
+				retval += h.footprint();
+		}
+		return retval;
+	}
+
+	AtomicLong recentSlot()
+	{
+		return recentSlot;
+	}
+
+	/**
+	 * Builds the immutable view of the current atmospheric state.
+	 *
+	 * @return atmospheric information
+	 */
+	AtmosphericInformation atmosphericInformation()
+	{
+		return AtmosphericInformation.builder()
+				.wind(readings.get(ordinal, DataPointType.WIND))
+				.temperature(readings.get(ordinal, DataPointType.TEMPERATURE))
+				.humidity(readings.get(ordinal, DataPointType.HUMIDITY))
+				.pressure(readings.get(ordinal, DataPointType.PRESSURE))
+				.cloudCover(readings.get(ordinal, DataPointType.CLOUDCOVER))
+				.precipitation(readings.get(ordinal, DataPointType.PRECIPITATION))
+				.lastUpdateTime(lastUpdateTime)
+				.build();
+	}
+
+	/**
+	 * Builds the immutable view of the airport, including its current atmospheric state.
+	 *
+	 * @return airport data
+	 */
+	AirportData toAirportData()
+	{
+		return store.get(ordinal, atmosphericInformation());
+	}
+}
@@ -0,0 +1,418 @@
+package com.crossover.trial.weather.repo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.GeoPoint;
+
+/**
+ * Columnar store of the airport metadata. Each airport is a row identified by an ordinal, with one primitive array per
+ * numeric field (NaN for null) and the low cardinality strings (city, country, dst) encoded on dictionaries, so the
+ * store holds a few arrays instead of several objects per airport. {@link AirportData} is only built when an airport
+ * leaves the repository.
+ * <p>
+ * Rows are written under a lock and read optimistically, retrying if a write happened meanwhile, so readers never see
+ * half of an update. The ordinals of deleted airports are kept on a free list and reused by the next airports added,
+ * so the store stays as large as the most airports it ever held at once.
+ */
+final class AirportStore
+{
+	private static final int INITIAL_ROWS = 64;
+
+	// Null code on the dictionary columns
+	private static final int NONE = -1;
+
+	// Bytes of a row on the columns (4 references, 4 doubles, 3 ints), and of the objects of an airport (codes, name
+	// and location)
+	private static final int ROW_BYTES = 4 * 4 + 4 * 8 + 3 * 4;
+	private static final int OBJECT_BYTES = 200;
+
+	private final StampedLock lock = new StampedLock();
+
+	// Number of rows allocated
+	private int size;
+
+	// Ordinals of the deleted rows, reused before allocating new ones
+	private int[] free = new int[16];
+	private int freeCount;
+
+	private String[] iata = new String[INITIAL_ROWS];
+	private String[] icao = new String[INITIAL_ROWS];
+	private String[] name = new String[INITIAL_ROWS];
+	private double[] lat = new double[INITIAL_ROWS];
+	private double[] lon = new double[INITIAL_ROWS];
+	private double[] alt = new double[INITIAL_ROWS];
+	private double[] timezone = new double[INITIAL_ROWS];
+	private int[] city = new int[INITIAL_ROWS];
+	private int[] country = new int[INITIAL_ROWS];
+	private int[] dst = new int[INITIAL_ROWS];
+
+	// Location with the values of the distance formulas, precomputed once per row
+	private GeoPoint[] geo = new GeoPoint[INITIAL_ROWS];
+
+	private final Dictionary cities = new Dictionary();
+	private final Dictionary countries = new Dictionary();
+	private final Dictionary dsts = new Dictionary();
+
+	/**
+	 * Writes a new row, on the ordinal of a deleted one if any.
+	 *
+	 * @param ad airport metadata
+	 * @return ordinal of the row
+	 */
+	int add(AirportData ad)
+	{
+		long stamp = lock.writeLock();
+		try
+		{
+			int ordinal;
+			if (freeCount > 0)
+			{
+				ordinal = free[--freeCount];
+			}
+			else
+			{
+				if (size == lat.length)
+					grow(size * 2);
+				ordinal = size++;
+			}
+			write(ordinal, ad);
+			return ordinal;
+		}
+		finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Releases the row of a deleted airport. The row is kept as is until reused, so a reader still holding the
+	 * ordinal never sees an empty row.
+	 *
+	 * @param ordinal row
+	 */
+	void remove(int ordinal)
+	{
+		long stamp = lock.writeLock();
+		try
+		{
+			if (freeCount == free.length)
+				free = Arrays.copyOf(free, freeCount * 2);
+			free[freeCount++] = ordinal;
+		}
+		finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Overwrites the metadata of a row.
+	 *
+	 * @param ordinal row
+	 * @param ad airport metadata
+	 */
+	void set(int ordinal, AirportData ad)
+	{
+		long stamp = lock.writeLock();
+		try
+		{
+			write(ordinal, ad);
+		}
+		finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Builds the airport of a row.
+	 *
+	 * @param ordinal row
+	 * @param info atmospheric information of the airport
+	 * @return airport
+	 */
+	AirportData get(int ordinal, AtmosphericInformation info)
+	{
+		Row row = new Row();
+		long stamp = lock.tryOptimisticRead();
+		read(ordinal, row);
+		if (!lock.validate(stamp))
+		{
+			stamp = lock.readLock();
+			try
+			{
+				read(ordinal, row);
+			}
+			finally
+			{
+				lock.unlockRead(stamp);
+			}
+		}
+
+		// Codes are decoded once the row is known to be consistent
+		return AirportData.builder()
+				.iata(row.iata)
+				.icao(row.icao)
+				.name(row.name)
+				.city(row.cities.decode(row.city))
+				.country(row.countries.decode(row.country))
+				.dst(row.dsts.decode(row.dst))
+				.lat(row.lat)
+				.lon(row.lon)
+				.alt(Double.isNaN(row.alt) ? null : row.alt)
+				.timezone(Double.isNaN(row.timezone) ? null : row.timezone)
+				.atmosphericInformation(info)
+				.build();
+	}
+
+	String iata(int ordinal)
+	{
+		long stamp = lock.tryOptimisticRead();
+		String retval = iata[ordinal];
+		if (!lock.validate(stamp))
+		{
+			stamp = lock.readLock();
+			try
+			{
+				retval = iata[ordinal];
+			}
+			finally
+			{
+				lock.unlockRead(stamp);
+			}
+		}
+		return retval;
+	}
+
+	String icao(int ordinal)
+	{
+		long stamp = lock.tryOptimisticRead();
+		String retval = icao[ordinal];
+		if (!lock.validate(stamp))
+		{
+			stamp = lock.readLock();
+			try
+			{
+				retval = icao[ordinal];
+			}
+			finally
+			{
+				lock.unlockRead(stamp);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @return location of the row, latitude and longitude in degrees are {@link #lat(int)} and {@link #lon(int)}
+	 */
+	GeoPoint geoPoint(int ordinal)
+	{
+		long stamp = lock.tryOptimisticRead();
+		GeoPoint retval = geo[ordinal];
+		if (!lock.validate(stamp))
+		{
+			stamp = lock.readLock();
+			try
+			{
+				retval = geo[ordinal];
+			}
+			finally
+			{
+				lock.unlockRead(stamp);
+			}
+		}
+		return retval;
+	}
+
+	double lat(int ordinal)
+	{
+		long stamp = lock.tryOptimisticRead();
+		double retval = lat[ordinal];
+		if (!lock.validate(stamp))
+		{
+			stamp = lock.readLock();
+			try
+			{
+				retval = lat[ordinal];
+			}
+			finally
+			{
+				lock.unlockRead(stamp);
+			}
+		}
+		return retval;
+	}
+
+	double lon(int ordinal)
+	{
+		long stamp = lock.tryOptimisticRead();
+		double retval = lon[ordinal];
+		if (!lock.validate(stamp))
+		{
+			stamp = lock.readLock();
+			try
+			{
+				retval = lon[ordinal];
+			}
+			finally
+			{
+				lock.unlockRead(stamp);
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * @return number of rows in use
+	 */
+	int size()
+	{
+		long stamp = lock.readLock();
+		try
+		{
+			return size - freeCount;
+		}
+		finally
+		{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * @return estimated memory used by the rows, in bytes
+	 */
+	long footprint()
+	{
+		long stamp = lock.readLock();
+		try
+		{
+			return (long) lat.length * ROW_BYTES + (long) (size - freeCount) * OBJECT_BYTES;
+		}
+		finally
+		{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private void write(int ordinal, AirportData ad)
+	{
+		iata[ordinal] = ad.iata();
+		icao[ordinal] = ad.icao();
+		name[ordinal] = ad.name();
+		lat[ordinal] = ad.lat();
+		lon[ordinal] = ad.lon();
+		alt[ordinal] = ad.alt() == null ? Double.NaN : ad.alt();
+		timezone[ordinal] = ad.timezone() == null ? Double.NaN : ad.timezone();
+		city[ordinal] = cities.encode(ad.city());
+		country[ordinal] = countries.encode(ad.country());
+		dst[ordinal] = dsts.encode(ad.dst());
+		geo[ordinal] = GeoPoint.of(ad.lat(), ad.lon());
+	}
+
+	/**
+	 * Copies a row, it may be inconsistent until validated.
+	 */
+	private void read(int ordinal, Row row)
+	{
+		row.iata = iata[ordinal];
+		row.icao = icao[ordinal];
+		row.name = name[ordinal];
+		row.lat = lat[ordinal];
+		row.lon = lon[ordinal];
+		row.alt = alt[ordinal];
+		row.timezone = timezone[ordinal];
+		row.city = city[ordinal];
+		row.country = country[ordinal];
+		row.dst = dst[ordinal];
+		row.cities = cities.values;
+		row.countries = countries.values;
+		row.dsts = dsts.values;
+	}
+
+	private void grow(int rows)
+	{
+		iata = Arrays.copyOf(iata, rows);
+		icao = Arrays.copyOf(icao, rows);
+		name = Arrays.copyOf(name, rows);
+		lat = Arrays.copyOf(lat, rows);
+		lon = Arrays.copyOf(lon, rows);
+		alt = Arrays.copyOf(alt, rows);
+		timezone = Arrays.copyOf(timezone, rows);
+		city = Arrays.copyOf(city, rows);
+		country = Arrays.copyOf(country, rows);
+		dst = Arrays.copyOf(dst, rows);
+		geo = Arrays.copyOf(geo, rows);
+	}
+
+	/**
+	 * Copy of a row.
+	 */
+	private static final class Row
+	{
+		String iata;
+		String icao;
+		String name;
+		double lat;
+		double lon;
+		double alt;
+		double timezone;
+		int city;
+		int country;
+		int dst;
+		Values cities;
+		Values countries;
+		Values dsts;
+	}
+
+	/**
+	 * Distinct values of a string column, appended on first use and never removed. Written under the store lock.
+	 */
+	private static final class Dictionary
+	{
+		private final Map<String, Integer> codes = new HashMap<>();
+
+		// Replaced by a larger copy when full, so readers can keep the one they saw
+		private Values values = new Values(new String[16]);
+
+		int encode(String value)
+		{
+			if (value == null)
+				return NONE;
+
+			Integer code = codes.get(value);
+			if (code == null)
+			{
+				code = codes.size();
+				if (code == values.strings.length)
+					values = new Values(Arrays.copyOf(values.strings, code * 2));
+				values.strings[code] = value;
+				codes.put(value, code);
+			}
+			return code;
+		}
+	}
+
+	/**
+	 * Values of a dictionary, indexed by code.
+	 */
+	private static final class Values
+	{
+		final String[] strings;
+
+		Values(String[] strings)
+		{
+			this.strings = strings;
+		}
+
+		String decode(int code)
+		{
+			return code == NONE ? null : strings[code];
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.crossover.trial.weather.repo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.HistoricDataPoint;
+
+/**
+ * Bounded history of the data points of one type collected for an airport. Points are kept on a ring of primitive
+ * arrays, one column per field, so the history doesn't hold any {@link DataPoint} object and the oldest points are
+ * overwritten once it's full. The arrays grow on demand up to the capacity, so rarely updated airports stay small.
+ * <p>
+ * Writers that find the history locked are counted on the {@link RepositoryStats}, as well as the bytes it grows.
+ */
+final class DataPointHistory
+{
+	private static final int INITIAL_CAPACITY = 8;
+
+	// Bytes of a sample (time + mean + 4 ints) and of the object and array headers
+	private static final int SAMPLE_BYTES = 8 + 8 + 4 * 4;
+	private static final int OVERHEAD_BYTES = 32 + 6 * 16;
+
+	private final int capacity;
+
+	private final RepositoryStats stats;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private long[] times;
+	private double[] means;
+	private int[] firsts;
+	private int[] seconds;
+	private int[] thirds;
+	private int[] counts;
+
+	// Number of samples written since the creation
+	private long written;
+
+	DataPointHistory(int capacity, RepositoryStats stats)
+	{
+		this.capacity = capacity;
+		this.stats = stats;
+		resize(Math.min(capacity, INITIAL_CAPACITY));
+		stats.historyResized(OVERHEAD_BYTES);
+	}
+
+	/**
+	 * Appends a data point, overwriting the oldest one if the history is full.
+	 *
+	 * @param time time of the data point
+	 * @param dp data point
+	 */
+	void add(long time, DataPoint dp)
+	{
+		if (!lock.tryLock())
+		{
+			stats.contended(RepositoryStats.Contention.HISTORY);
+			lock.lock();
+		}
+		try
+		{
+			// Not wrapped yet while growing, so the points keep their positions
+			if (written == times.length && times.length < capacity)
+				resize(Math.min(capacity, times.length * 2));
+
+			int i = (int) (written++ % times.length);
+			times[i] = time;
+			means[i] = dp.mean();
+			firsts[i] = dp.first();
+			seconds[i] = dp.second();
+			thirds[i] = dp.third();
+			counts[i] = dp.count();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Data points collected in the given period, oldest first.
+	 *
+	 * @param from start of the period, inclusive
+	 * @param to end of the period, inclusive
+	 * @return data points
+	 */
+	List<HistoricDataPoint> between(long from, long to)
+	{
+		List<HistoricDataPoint> retval = new ArrayList<>();
+		lock.lock();
+		try
+		{
+			for (long n = Math.max(0, written - times.length); n < written; n++)
+			{
+				int i = (int) (n % times.length);
+				if (times[i] >= from && times[i] <= to)
+				{
+					retval.add(HistoricDataPoint.builder()
+							.timestamp(times[i])
+							.mean(means[i])
+							.first(firsts[i])
+							.second(seconds[i])
+							.third(thirds[i])
+							.count(counts[i])
+							.build());
+				}
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return retval;
+	}
+
+	int size()
+	{
+		lock.lock();
+		try
+		{
+			return (int) Math.min(written, times.length);
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return estimated heap footprint, in bytes
+	 */
+	long footprint()
+	{
+		lock.lock();
+		try
+		{
+			return OVERHEAD_BYTES + (long) times.length * SAMPLE_BYTES;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private void resize(int length)
+	{
+		stats.historyResized((long) (length - (times == null ? 0 : times.length)) * SAMPLE_BYTES);
+
+		times = times == null ? new long[length] : Arrays.copyOf(times, length);
+		means = means == null ? new double[length] : Arrays.copyOf(means, length);
+		firsts = firsts == null ? new int[length] : Arrays.copyOf(firsts, length);
+		seconds = seconds == null ? new int[length] : Arrays.copyOf(seconds, length);
+		thirds = thirds == null ? new int[length] : Arrays.copyOf(thirds, length);
+		counts = counts == null ? new int[length] : Arrays.copyOf(counts, length);
+	}
+}
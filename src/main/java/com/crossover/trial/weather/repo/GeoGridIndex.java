@@ -0,0 +1,135 @@
+package com.crossover.trial.weather.repo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.crossover.trial.weather.model.Geodesy;
+
+/**
+ * Spatial index of airports over a regular latitude/longitude grid. Each cell keeps the codes of the airports located
+ * inside it, so a radius query only visits the cells overlapping the bounding box of the spherical cap instead of every
+ * airport.
+ */
+final class GeoGridIndex
+{
+	private static final int LON_CELLS_OFFSET = 1 << 16;
+
+	// Size of a grid cell, in degrees
+	private final double cellSize;
+
+	private final int lonCells;
+
+	// Grid cell key -> codes of the airports inside
+	private final Map<Long, Set<String>> cells = new ConcurrentHashMap<>();
+
+	GeoGridIndex(double cellSize)
+	{
+		this.cellSize = cellSize;
+		this.lonCells = (int) Math.ceil(360 / cellSize);
+	}
+
+	/**
+	 * Registers an airport location.
+	 *
+	 * @param code airport index key
+	 * @param lat latitude in degrees
+	 * @param lon longitude in degrees
+	 */
+	void add(String code, double lat, double lon)
+	{
+		// Added inside the map operation, a concurrent remove could otherwise drop the cell between lookup and add
+		cells.compute(key(latCell(lat), lonCell(lon)), (k, v) -> {
+			Set<String> retval = v == null ? ConcurrentHashMap.newKeySet() : v;
+			retval.add(code);
+			return retval;
+		});
+	}
+
+	/**
+	 * Unregisters an airport location.
+	 *
+	 * @param code airport index key
+	 * @param lat latitude in degrees
+	 * @param lon longitude in degrees
+	 */
+	void remove(String code, double lat, double lon)
+	{
+		cells.computeIfPresent(key(latCell(lat), lonCell(lon)), (k, v) -> {
+			v.remove(code);
+			return v.isEmpty() ? null : v;
+		});
+	}
+
+	void clear()
+	{
+		cells.clear();
+	}
+
+	/**
+	 * Codes of the airports which may be inside the given radius, the caller still has to filter them with the exact
+	 * distance.
+	 *
+	 * @param lat latitude of the center in degrees
+	 * @param lon longitude of the center in degrees
+	 * @param radius radius in km
+	 * @return candidate airport codes
+	 */
+	List<String> candidates(double lat, double lon, double radius)
+	{
+		double angle = radius / Geodesy.EARTH_RADIUS;
+		double latMin = lat - Math.toDegrees(angle);
+		double latMax = lat + Math.toDegrees(angle);
+
+		// The cap reaches a pole or is wider than a hemisphere, every longitude is involved
+		double lonDelta = 180;
+		if (latMin > -90 && latMax < 90 && angle < Math.PI / 2)
+		{
+			double ratio = Math.sin(angle) / Math.cos(Math.toRadians(lat));
+			if (ratio < 1)
+				lonDelta = Math.toDegrees(Math.asin(ratio));
+		}
+
+		int latFrom = latCell(Math.max(latMin, -90));
+		int latTo = latCell(Math.min(latMax, 90));
+		int lonFrom = lonDelta >= 180 ? 0 : (int) Math.floor((lon - lonDelta + 180) / cellSize);
+		int lonTo = lonDelta >= 180 ? lonCells - 1 : (int) Math.floor((lon + lonDelta + 180) / cellSize);
+
+		List<String> retval = new ArrayList<>();
+
+		// Visiting the box would cost more than visiting every non empty cell
+		if ((long) (latTo - latFrom + 1) * (lonTo - lonFrom + 1) > cells.size())
+		{
+			cells.values().forEach(retval::addAll);
+			return retval;
+		}
+
+		for (int i = latFrom; i <= latTo; i++)
+		{
+			for (int j = lonFrom; j <= lonTo; j++)
+			{
+				Set<String> cell = cells.get(key(i, Math.floorMod(j, lonCells)));
+				if (cell != null)
+					retval.addAll(cell);
+			}
+		}
+		return retval;
+	}
+
+	private int latCell(double lat)
+	{
+		return (int) Math.floor((lat + 90) / cellSize);
+	}
+
+	private int lonCell(double lon)
+	{
+		return Math.floorMod((int) Math.floor((lon + 180) / cellSize), lonCells);
+	}
+
+	private static long key(int latCell, int lonCell)
+	{
+		return (long) latCell * LON_CELLS_OFFSET + lonCell;
+	}
+}
@@ -0,0 +1,84 @@
+package com.crossover.trial.weather.repo;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Latest readings kept as {@link DataPoint} objects, on chunks of atomic references.
+ */
+final class HeapReadings implements LatestReadings
+{
+	private static final int TYPES = DataPointType.values().length;
+
+	// Airports per chunk, a power of two
+	private static final int CHUNK_SHIFT = 10;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	// Bytes of a slot (compressed reference) and of a data point object
+	private static final int SLOT_BYTES = 4;
+	private static final int DATA_POINT_BYTES = 40;
+
+	// Replaced by a larger copy when a new chunk is needed, guarded by this for writes
+	private volatile Object[] chunks = new Object[0];
+
+	// Number of slots holding a data point
+	private final LongAdder points = new LongAdder();
+
+	@Override
+	public synchronized void allocate(int ordinal)
+	{
+		int chunk = ordinal >>> CHUNK_SHIFT;
+		if (chunk >= chunks.length)
+		{
+			Object[] c = Arrays.copyOf(chunks, chunk + 1);
+			for (int i = chunks.length; i < c.length; i++)
+				c[i] = new AtomicReferenceArray<DataPoint>(TYPES << CHUNK_SHIFT);
+			chunks = c;
+		}
+	}
+
+	@Override
+	public void set(int ordinal, DataPointType pointType, DataPoint dp)
+	{
+		if (chunk(ordinal).getAndSet(slot(ordinal, pointType), dp) == null)
+			points.increment();
+	}
+
+	@Override
+	public void clear(int ordinal)
+	{
+		AtomicReferenceArray<DataPoint> chunk = chunk(ordinal);
+		for (DataPointType pointType : DataPointType.values())
+		{
+			if (chunk.getAndSet(slot(ordinal, pointType), null) != null)
+				points.decrement();
+		}
+	}
+
+	@Override
+	public DataPoint get(int ordinal, DataPointType pointType)
+	{
+		return chunk(ordinal).get(slot(ordinal, pointType));
+	}
+
+	@Override
+	public long footprint()
+	{
+		return (long) chunks.length * (TYPES << CHUNK_SHIFT) * SLOT_BYTES + points.sum() * DATA_POINT_BYTES;
+	}
+
+	@SuppressWarnings("unchecked")
+	private AtomicReferenceArray<DataPoint> chunk(int ordinal)
+	{
+		return (AtomicReferenceArray<DataPoint>) chunks[ordinal >>> CHUNK_SHIFT];
+	}
+
+	private static int slot(int ordinal, DataPointType pointType)
+	{
+		return (ordinal & CHUNK_MASK) * TYPES + pointType.ordinal();
+	}
+}
@@ -0,0 +1,48 @@
+package com.crossover.trial.weather.repo;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Latest data point of each {@link DataPointType} of every airport, indexed by the airport ordinal.
+ */
+interface LatestReadings
+{
+	/**
+	 * Makes the slots of an airport available. Called before the airport is published, new ordinals are allocated in
+	 * increasing order.
+	 *
+	 * @param ordinal airport ordinal
+	 */
+	void allocate(int ordinal);
+
+	/**
+	 * Empties the slots of a deleted airport, before its ordinal is reused.
+	 *
+	 * @param ordinal airport ordinal
+	 */
+	void clear(int ordinal);
+
+	/**
+	 * Stores the latest data point of a type.
+	 *
+	 * @param ordinal airport ordinal
+	 * @param pointType point type
+	 * @param dp data point
+	 */
+	void set(int ordinal, DataPointType pointType, DataPoint dp);
+
+	/**
+	 * Gets the latest data point of a type.
+	 *
+	 * @param ordinal airport ordinal
+	 * @param pointType point type
+	 * @return data point or null if none was stored
+	 */
+	DataPoint get(int ordinal, DataPointType pointType);
+
+	/**
+	 * @return estimated memory used by the readings, in bytes
+	 */
+	long footprint();
+}
@@ -0,0 +1,321 @@
+package com.crossover.trial.weather.repo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.crossover.trial.weather.model.GeoPoint;
+import com.crossover.trial.weather.model.Geodesy;
+
+/**
+ * Precomputed neighbours of every airport up to a max radius. Airports are identified by their {@link AirportStore}
+ * ordinal, and the neighbours of each one are kept as parallel arrays of ordinals and distances sorted by distance, so
+ * a radius query is a binary search plus a prefix of the arrays. The lists are maintained incrementally when airports
+ * are added, moved or deleted, computing the new ones in parallel on the fork-join pool.
+ * <p>
+ * Distances are stored as floats, queries right at the boundary of a neighbour may round either way.
+ */
+final class NeighbourGraph
+{
+	private static final int INITIAL_NODES = 64;
+
+	// Neighbours beyond this distance are not kept, queries with a larger radius are not answered
+	private final double maxRadius;
+
+	// Airports which may be inside the max radius of the given one
+	private final Function<AirportRecord, Collection<AirportRecord>> candidates;
+
+	// Whether a record is still the current state of its airport
+	private final Predicate<AirportRecord> current;
+
+	// Node of each ordinal, replaced by a larger copy when full, guarded by this for writes
+	private volatile Node[] nodes = new Node[INITIAL_NODES];
+
+	NeighbourGraph(double maxRadius, Function<AirportRecord, Collection<AirportRecord>> candidates,
+			Predicate<AirportRecord> current)
+	{
+		this.maxRadius = maxRadius;
+		this.candidates = candidates;
+		this.current = current;
+	}
+
+	/**
+	 * Registers new, updated or moved airports. Records which are no longer current are skipped, a later call registers
+	 * the record which replaced them.
+	 *
+	 * @param records airports
+	 */
+	synchronized void add(Collection<AirportRecord> records)
+	{
+		if (maxRadius <= 0)
+			return;
+
+		List<AirportRecord> placed = new ArrayList<>();
+		for (AirportRecord r : records)
+		{
+			if (!current.test(r))
+				continue;
+
+			Node node = node(r.ordinal());
+			double lat = r.lat();
+			double lon = r.lon();
+			if (node.record != null && Double.compare(node.lat, lat) == 0 && Double.compare(node.lon, lon) == 0)
+			{
+				// Metadata update, the neighbours are still valid
+				node.record = r;
+			}
+			else
+			{
+				detach(r.ordinal(), node);
+				node.record = r;
+				node.lat = lat;
+				node.lon = lon;
+				placed.add(r);
+			}
+		}
+
+		// Own lists of the placed airports
+		placed.parallelStream().forEach(r -> nodes[r.ordinal()].neighbours = compute(r));
+
+		// Reverse edges on the existing neighbours of the placed airports
+		Set<Integer> own = new HashSet<>();
+		placed.forEach(r -> own.add(r.ordinal()));
+		Map<Integer, Map<Integer, Float>> inserts = new HashMap<>();
+		for (AirportRecord r : placed)
+		{
+			Neighbours list = nodes[r.ordinal()].neighbours;
+			for (int i = 0; i < list.ordinals.length; i++)
+			{
+				if (!own.contains(list.ordinals[i]))
+				{
+					inserts.computeIfAbsent(list.ordinals[i], k -> new HashMap<>())
+							.put(r.ordinal(), list.distances[i]);
+				}
+			}
+		}
+		Node[] n = nodes;
+		inserts.entrySet().parallelStream().forEach(e -> {
+			// Airports not registered yet compute their whole list when they are
+			Node node = e.getKey() < n.length ? n[e.getKey()] : null;
+			if (node != null)
+				node.neighbours = node.neighbours.merge(e.getValue());
+		});
+	}
+
+	/**
+	 * Unregisters a deleted airport.
+	 *
+	 * @param record airport
+	 */
+	synchronized void remove(AirportRecord record)
+	{
+		Node[] n = nodes;
+		if (record.ordinal() < n.length && n[record.ordinal()] != null)
+		{
+			Node node = n[record.ordinal()];
+			detach(record.ordinal(), node);
+			node.record = null;
+		}
+	}
+
+	/**
+	 * Airports inside the radius of the given one, closest first.
+	 *
+	 * @param center reference airport
+	 * @param radius distance in km
+	 * @return airports including the reference one, or null if the graph can't answer the query
+	 */
+	List<AirportRecord> near(AirportRecord center, double radius)
+	{
+		Node[] n = nodes;
+		if (radius > maxRadius || center.ordinal() >= n.length)
+			return null;
+
+		Node node = n[center.ordinal()];
+		AirportRecord record = node == null ? null : node.record;
+		if (record == null)
+			return null;
+
+		Neighbours list = node.neighbours;
+		int end = list.upperBound(radius);
+		List<AirportRecord> retval = new ArrayList<>(end + 1);
+		retval.add(record);
+		for (int i = 0; i < end; i++)
+		{
+			int o = list.ordinals[i];
+			AirportRecord r = o < n.length && n[o] != null ? n[o].record : null;
+			if (r != null)
+				retval.add(r);
+		}
+		return retval;
+	}
+
+	private Neighbours compute(AirportRecord r)
+	{
+		long[] entries = new long[16];
+		int size = 0;
+		for (AirportRecord c : candidates.apply(r))
+		{
+			if (c.ordinal() == r.ordinal())
+				continue;
+
+			GeoPoint a = r.geoPoint();
+			GeoPoint b = c.geoPoint();
+			if (Geodesy.isWithin(a, b, maxRadius))
+			{
+				double d = Geodesy.distance(a, b);
+				if (size == entries.length)
+					entries = Arrays.copyOf(entries, size * 2);
+				entries[size++] = pack(c.ordinal(), (float) d);
+			}
+		}
+		return Neighbours.of(entries, size);
+	}
+
+	/**
+	 * Packs a neighbour on a long which sorts by distance, non-negative floats have the same order as their bits.
+	 */
+	private static long pack(int ordinal, float distance)
+	{
+		return ((long) Float.floatToIntBits(distance) << 32) | (ordinal & 0xffffffffL);
+	}
+
+	/**
+	 * Removes the airport from the lists of its neighbours and clears its own.
+	 */
+	private void detach(int ordinal, Node node)
+	{
+		Node[] n = nodes;
+		Neighbours list = node.neighbours;
+		for (int o : list.ordinals)
+		{
+			if (o < n.length && n[o] != null)
+				n[o].neighbours = n[o].neighbours.without(ordinal);
+		}
+		node.neighbours = Neighbours.EMPTY;
+	}
+
+	private Node node(int ordinal)
+	{
+		Node[] n = nodes;
+		if (ordinal >= n.length)
+		{
+			n = Arrays.copyOf(n, Math.max(n.length * 2, ordinal + 1));
+			nodes = n;
+		}
+		if (n[ordinal] == null)
+			n[ordinal] = new Node();
+		return n[ordinal];
+	}
+
+	/**
+	 * An airport, the location its neighbours were computed for, and its neighbours.
+	 */
+	private static final class Node
+	{
+		volatile AirportRecord record;
+		double lat;
+		double lon;
+		volatile Neighbours neighbours = Neighbours.EMPTY;
+	}
+
+	/**
+	 * Immutable neighbour list, sorted by distance.
+	 */
+	private static final class Neighbours
+	{
+		static final Neighbours EMPTY = new Neighbours(new int[0], new float[0]);
+
+		final int[] ordinals;
+		final float[] distances;
+
+		Neighbours(int[] ordinals, float[] distances)
+		{
+			this.ordinals = ordinals;
+			this.distances = distances;
+		}
+
+		/**
+		 * @return number of neighbours at a distance less or equal than the radius
+		 */
+		int upperBound(double radius)
+		{
+			int lo = 0;
+			int hi = distances.length;
+			while (lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if (distances[mid] <= radius)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		Neighbours without(int ordinal)
+		{
+			for (int i = 0; i < ordinals.length; i++)
+			{
+				if (ordinals[i] == ordinal)
+				{
+					int[] o = new int[ordinals.length - 1];
+					float[] d = new float[ordinals.length - 1];
+					System.arraycopy(ordinals, 0, o, 0, i);
+					System.arraycopy(distances, 0, d, 0, i);
+					System.arraycopy(ordinals, i + 1, o, i, o.length - i);
+					System.arraycopy(distances, i + 1, d, i, d.length - i);
+					return new Neighbours(o, d);
+				}
+			}
+			return this;
+		}
+
+		/**
+		 * New list with the given neighbours, replacing them if already present.
+		 *
+		 * @param added ordinal -> distance
+		 * @return list
+		 */
+		Neighbours merge(Map<Integer, Float> added)
+		{
+			long[] entries = new long[ordinals.length + added.size()];
+			int size = 0;
+			for (int i = 0; i < ordinals.length; i++)
+			{
+				if (!added.containsKey(ordinals[i]))
+					entries[size++] = pack(ordinals[i], distances[i]);
+			}
+			for (Map.Entry<Integer, Float> e : added.entrySet())
+				entries[size++] = pack(e.getKey(), e.getValue());
+			return of(entries, size);
+		}
+
+		/**
+		 * Sorts packed neighbours into a list.
+		 *
+		 * @param entries packed neighbours
+		 * @param size number of entries used
+		 * @return list
+		 */
+		static Neighbours of(long[] entries, int size)
+		{
+			Arrays.sort(entries, 0, size);
+			int[] o = new int[size];
+			float[] d = new float[size];
+			for (int i = 0; i < size; i++)
+			{
+				o[i] = (int) entries[i];
+				d[i] = Float.intBitsToFloat((int) (entries[i] >>> 32));
+			}
+			return new Neighbours(o, d);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.crossover.trial.weather.repo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Latest readings kept outside of the heap, as fixed width records on chunks of direct buffers, so large numbers of
+ * airports don't add objects for the garbage collector to trace. A record is written under a striped lock and read
+ * optimistically, seqlock style: readers retry if a write happened meanwhile, and never block writers. Writers that
+ * find their stripe locked are counted on the {@link RepositoryStats}.
+ * <p>
+ * Record layout: first, second, third and count as ints, mean as a double, and a presence flag.
+ */
+final class OffHeapReadings implements LatestReadings
+{
+	private static final int TYPES = DataPointType.values().length;
+
+	private static final int FIRST = 0;
+	private static final int SECOND = 4;
+	private static final int THIRD = 8;
+	private static final int COUNT = 12;
+	private static final int MEAN = 16;
+	private static final int PRESENT = 24;
+	private static final int RECORD_BYTES = 32;
+
+	// Airports per chunk, a power of two
+	private static final int CHUNK_SHIFT = 10;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	// Number of locks, a power of two
+	private static final int STRIPES = 64;
+
+	private final StampedLock[] locks = new StampedLock[STRIPES];
+
+	private final RepositoryStats stats;
+
+	// Replaced by a larger copy when a new chunk is needed, guarded by this for writes
+	private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+	OffHeapReadings(RepositoryStats stats)
+	{
+		this.stats = stats;
+		for (int i = 0; i < STRIPES; i++)
+			locks[i] = new StampedLock();
+	}
+
+	@Override
+	public synchronized void allocate(int ordinal)
+	{
+		int chunk = ordinal >>> CHUNK_SHIFT;
+		if (chunk >= chunks.length)
+		{
+			ByteBuffer[] c = Arrays.copyOf(chunks, chunk + 1);
+			for (int i = chunks.length; i < c.length; i++)
+				c[i] = ByteBuffer.allocateDirect((TYPES << CHUNK_SHIFT) * RECORD_BYTES).order(ByteOrder.nativeOrder());
+			chunks = c;
+		}
+	}
+
+	@Override
+	public void set(int ordinal, DataPointType pointType, DataPoint dp)
+	{
+		ByteBuffer buffer = chunks[ordinal >>> CHUNK_SHIFT];
+		int record = record(ordinal, pointType);
+		StampedLock lock = lock(ordinal, pointType);
+
+		long stamp = lock.tryWriteLock();
+		if (stamp == 0)
+		{
+			stats.contended(RepositoryStats.Contention.READINGS);
+			stamp = lock.writeLock();
+		}
+		try
+		{
+			buffer.putInt(record + FIRST, dp.first());
+			buffer.putInt(record + SECOND, dp.second());
+			buffer.putInt(record + THIRD, dp.third());
+			buffer.putInt(record + COUNT, dp.count());
+			buffer.putDouble(record + MEAN, dp.mean());
+			buffer.putInt(record + PRESENT, 1);
+		}
+		finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void clear(int ordinal)
+	{
+		ByteBuffer buffer = chunks[ordinal >>> CHUNK_SHIFT];
+		for (DataPointType pointType : DataPointType.values())
+		{
+			StampedLock lock = lock(ordinal, pointType);
+			long stamp = lock.writeLock();
+			try
+			{
+				buffer.putInt(record(ordinal, pointType) + PRESENT, 0);
+			}
+			finally
+			{
+				lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	@Override
+	public DataPoint get(int ordinal, DataPointType pointType)
+	{
+		ByteBuffer buffer = chunks[ordinal >>> CHUNK_SHIFT];
+		int record = record(ordinal, pointType);
+		StampedLock lock = lock(ordinal, pointType);
+
+		while (true)
+		{
+			long stamp = lock.tryOptimisticRead();
+			if (stamp == 0)
+			{
+				// A write is in progress
+				Thread.yield();
+				continue;
+			}
+
+			boolean present = buffer.getInt(record + PRESENT) != 0;
+			int first = buffer.getInt(record + FIRST);
+			int second = buffer.getInt(record + SECOND);
+			int third = buffer.getInt(record + THIRD);
+			int count = buffer.getInt(record + COUNT);
+			double mean = buffer.getDouble(record + MEAN);
+
+			if (lock.validate(stamp))
+			{
+				if (!present)
+					return null;
+				return DataPoint.builder().first(first).second(second).third(third).count(count).mean(mean).build();
+			}
+		}
+	}
+
+	@Override
+	public long footprint()
+	{
+		return (long) chunks.length * (TYPES << CHUNK_SHIFT) * RECORD_BYTES;
+	}
+
+	private static int record(int ordinal, DataPointType pointType)
+	{
+		return ((ordinal & CHUNK_MASK) * TYPES + pointType.ordinal()) * RECORD_BYTES;
+	}
+
+	private StampedLock lock(int ordinal, DataPointType pointType)
+	{
+		return locks[(ordinal * TYPES + pointType.ordinal()) & (STRIPES - 1)];
+	}
+}
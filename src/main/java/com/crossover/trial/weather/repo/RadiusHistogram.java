@@ -0,0 +1,82 @@
+package com.crossover.trial.weather.repo;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Fixed size histogram of the requested radius. Bucket i counts the radius in [i * width, (i + 1) * width), the last
+ * bucket counts every radius above the range (and non numeric ones), so memory stays constant whatever the clients
+ * send. It is serialized as a JSON array of counts, straight from the atomic buckets.
+ */
+@JsonSerialize(using = RadiusHistogram.Serializer.class)
+public final class RadiusHistogram
+{
+	// Width of a bucket, in km
+	private final double width;
+
+	// Counters, the last one is the overflow bucket
+	private final AtomicLongArray buckets;
+
+	RadiusHistogram(double width, int buckets)
+	{
+		if (width <= 0 || buckets <= 0)
+			throw new IllegalArgumentException("Invalid radius histogram " + buckets + "x" + width);
+
+		this.width = width;
+		this.buckets = new AtomicLongArray(buckets + 1);
+	}
+
+	/**
+	 * Counts a requested radius.
+	 *
+	 * @param radius radius in km
+	 */
+	void record(double radius)
+	{
+		buckets.incrementAndGet(bucket(radius));
+	}
+
+	/**
+	 * Number of requests counted on the bucket of the given radius.
+	 *
+	 * @param radius radius in km
+	 * @return number of requests
+	 */
+	public long count(double radius)
+	{
+		return buckets.get(bucket(radius));
+	}
+
+	/**
+	 * @return number of buckets, including the overflow one
+	 */
+	public int size()
+	{
+		return buckets.length();
+	}
+
+	private int bucket(double radius)
+	{
+		int overflow = buckets.length() - 1;
+		double i = radius / width;
+		return i >= 0 && i < overflow ? (int) i : overflow;
+	}
+
+	static class Serializer extends JsonSerializer<RadiusHistogram>
+	{
+		@Override
+		public void serialize(RadiusHistogram value, JsonGenerator gen, SerializerProvider serializers)
+				throws IOException
+		{
+			gen.writeStartArray();
+			for (int i = 0; i < value.buckets.length(); i++)
+				gen.writeNumber(value.buckets.get(i));
+			gen.writeEndArray();
+		}
+	}
+}
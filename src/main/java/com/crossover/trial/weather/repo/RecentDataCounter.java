@@ -0,0 +1,134 @@
+package com.crossover.trial.weather.repo;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Incremental count of the airports updated during a sliding time window. Time is split in slots, each airport
+ * remembers the slot where it was last counted and is moved to the current slot when updated, so the count is the sum
+ * of the slots inside the window and never needs to walk the airports.
+ * <p>
+ * Lost moves and waits on the lock of the slots are counted on the {@link RepositoryStats}.
+ */
+final class RecentDataCounter
+{
+	static final long NONE = Long.MIN_VALUE;
+
+	// Duration of a slot, in millis
+	private final long slotMillis;
+
+	// Count of airports per slot, and the slot number each position of the ring currently holds
+	private final long[] counts;
+	private final long[] slots;
+
+	private final RepositoryStats stats;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	RecentDataCounter(long windowMillis, long slotMillis, RepositoryStats stats)
+	{
+		this.stats = stats;
+		this.slotMillis = slotMillis;
+		this.counts = new long[(int) (windowMillis / slotMillis)];
+		this.slots = new long[counts.length];
+		Arrays.fill(slots, NONE);
+	}
+
+	/**
+	 * Counts an airport update.
+	 *
+	 * @param lastSlot the slot where the airport was last counted
+	 * @param now time of the update
+	 */
+	void update(AtomicLong lastSlot, long now)
+	{
+		long slot = now / slotMillis;
+		long previous = lastSlot.get();
+
+		// At most one move per airport and slot, concurrent updaters of the same airport lose the CAS and skip it
+		if (previous < slot)
+		{
+			if (lastSlot.compareAndSet(previous, slot))
+				move(previous, slot);
+			else
+				stats.contended(RepositoryStats.Contention.RECENT_DATA);
+		}
+	}
+
+	/**
+	 * Discounts a deleted airport.
+	 *
+	 * @param lastSlot the slot where the airport was last counted
+	 */
+	void remove(AtomicLong lastSlot)
+	{
+		long previous = lastSlot.getAndSet(NONE);
+		if (previous != NONE)
+			move(previous, NONE);
+	}
+
+	/**
+	 * Number of airports updated inside the window ending now.
+	 *
+	 * @param now current time
+	 * @return number of airports
+	 */
+	long count(long now)
+	{
+		long slot = now / slotMillis;
+		long retval = 0;
+		lock.lock();
+		try
+		{
+			for (int i = 0; i < counts.length; i++)
+			{
+				if (slots[i] > slot - counts.length && slots[i] <= slot)
+					retval += counts[i];
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return retval;
+	}
+
+	private void move(long from, long to)
+	{
+		if (!lock.tryLock())
+		{
+			stats.contended(RepositoryStats.Contention.RECENT_DATA);
+			lock.lock();
+		}
+		try
+		{
+			if (from != NONE)
+			{
+				int i = position(from);
+				if (slots[i] == from)
+					counts[i]--;
+			}
+
+			if (to != NONE)
+			{
+				int i = position(to);
+				if (slots[i] != to)
+				{
+					slots[i] = to;
+					counts[i] = 0;
+				}
+				counts[i]++;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private int position(long slot)
+	{
+		return (int) Math.floorMod(slot, (long) counts.length);
+	}
+}
@@ -0,0 +1,44 @@
+package com.crossover.trial.weather.repo;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Receives the mutations applied to the {@link WeatherRepository}, after they have been applied. Listeners are called
+ * holding the lock of the airport, so the mutations of an airport arrive in the order they were applied, and must not
+ * call back into the repository nor block. Work which may block goes in {@link #mutationsUnlocked()}.
+ */
+public interface RepositoryListener
+{
+	/**
+	 * A data point was accepted.
+	 *
+	 * @param iata IATA code of the airport
+	 * @param pointType the point type
+	 * @param dp the data point
+	 * @param time time of the update
+	 */
+	void dataPointAdded(String iata, DataPointType pointType, DataPoint dp, long time);
+
+	/**
+	 * An airport was added or its metadata updated.
+	 *
+	 * @param ad the airport
+	 */
+	void airportAdded(AirportData ad);
+
+	/**
+	 * An airport was deleted.
+	 *
+	 * @param iata IATA code of the airport
+	 */
+	void airportDeleted(String iata);
+
+	/**
+	 * Called on the thread which applied some mutations, once the locks of their airports are released. Listeners may
+	 * block here, for instance until the mutations are durable.
+	 */
+	default void mutationsUnlocked()
+	{}
+}
@@ -0,0 +1,176 @@
+package com.crossover.trial.weather.repo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.UpdateStatus;
+
+/**
+ * Internal counters of the repository writes: data points accepted per type, rejected per reason, and out of the
+ * range of their type per type, waits on the locks and lost compare-and-sets of the write path, bytes of history
+ * allocated, and the garbage created by an update, measured on a sample of them with the allocation counter of the
+ * thread. Every counter is a striped {@link LongAdder}, only summed when read.
+ */
+public final class RepositoryStats
+{
+	/**
+	 * Places of the write path where an update can wait for, or lose against, another one.
+	 */
+	enum Contention
+	{
+		// Striped locks of the off-heap readings
+		READINGS,
+		// Lock of a data point history, or creation of the history lost
+		HISTORY,
+		// Lock of the recent data counter, or move of the airport to the current slot lost
+		RECENT_DATA
+	}
+
+	// One update in this many is measured for allocations
+	private static final int ALLOCATION_SAMPLE = 256;
+
+	// Allocation counter of the threads, null if not supported by the JVM
+	private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationCounter();
+
+	private final long started = System.nanoTime();
+
+	private final LongAdder[] accepted = adders(DataPointType.values().length);
+	private final LongAdder[] rejected = adders(UpdateStatus.values().length);
+	private final LongAdder[] outOfRange = adders(DataPointType.values().length);
+	private final LongAdder[] contention = adders(Contention.values().length);
+
+	private final LongAdder historyBytes = new LongAdder();
+
+	private final LongAdder allocatedBytes = new LongAdder();
+	private final LongAdder allocationSamples = new LongAdder();
+
+	void accepted(DataPointType pointType)
+	{
+		accepted[pointType.ordinal()].increment();
+	}
+
+	void rejected(UpdateStatus status)
+	{
+		rejected[status.ordinal()].increment();
+	}
+
+	void outOfRange(DataPointType pointType)
+	{
+		outOfRange[pointType.ordinal()].increment();
+	}
+
+	void contended(Contention place)
+	{
+		contention[place.ordinal()].increment();
+	}
+
+	/**
+	 * @param bytes change of the memory used by the histories
+	 */
+	void historyResized(long bytes)
+	{
+		historyBytes.add(bytes);
+	}
+
+	long historyBytes()
+	{
+		return historyBytes.sum();
+	}
+
+	/**
+	 * Starts measuring the allocations of an update, if it's sampled.
+	 *
+	 * @return bytes allocated by the thread so far, or -1 if the update is not measured
+	 */
+	long allocationStart()
+	{
+		if (ALLOCATIONS == null || ThreadLocalRandom.current().nextInt(ALLOCATION_SAMPLE) != 0)
+			return -1;
+		return ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @param start value of {@link #allocationStart()}
+	 */
+	void allocationEnd(long start)
+	{
+		if (start >= 0)
+		{
+			allocatedBytes.add(ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId()) - start);
+			allocationSamples.increment();
+		}
+	}
+
+	/**
+	 * @return counters and rates since the repository was reset
+	 */
+	public Map<String, Object> toMap()
+	{
+		double seconds = (double) (System.nanoTime() - started) / TimeUnit.SECONDS.toNanos(1);
+
+		Map<String, Object> ingest = new LinkedHashMap<>();
+		for (DataPointType type : DataPointType.values())
+		{
+			long n = accepted[type.ordinal()].sum();
+			Map<String, Number> counts = new LinkedHashMap<>();
+			counts.put("count", n);
+			counts.put("rate", seconds > 0 ? n / seconds : 0);
+			ingest.put(key(type), counts);
+		}
+
+		Map<String, Long> rejections = new LinkedHashMap<>();
+		for (UpdateStatus status : UpdateStatus.values())
+		{
+			if (status != UpdateStatus.ACCEPTED)
+				rejections.put(key(status), rejected[status.ordinal()].sum());
+		}
+
+		Map<String, Long> outOfRanges = new LinkedHashMap<>();
+		for (DataPointType type : DataPointType.values())
+			outOfRanges.put(key(type), outOfRange[type.ordinal()].sum());
+
+		Map<String, Long> contended = new LinkedHashMap<>();
+		for (Contention place : Contention.values())
+			contended.put(key(place), contention[place.ordinal()].sum());
+
+		long samples = allocationSamples.sum();
+
+		Map<String, Object> retval = new LinkedHashMap<>();
+		retval.put("ingest", ingest);
+		retval.put("rejected", rejections);
+		retval.put("out_of_range", outOfRanges);
+		retval.put("contention", contended);
+		retval.put("allocated_bytes_per_update", samples > 0 ? (double) allocatedBytes.sum() / samples : null);
+		return retval;
+	}
+
+	private static String key(Enum<?> value)
+	{
+		return value.name().toLowerCase(Locale.ROOT);
+	}
+
+	private static LongAdder[] adders(int n)
+	{
+		LongAdder[] retval = new LongAdder[n];
+		for (int i = 0; i < n; i++)
+			retval[i] = new LongAdder();
+		return retval;
+	}
+
+	private static com.sun.management.ThreadMXBean allocationCounter()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return null;
+
+		com.sun.management.ThreadMXBean retval = (com.sun.management.ThreadMXBean) threads;
+		return retval.isThreadAllocatedMemorySupported() && retval.isThreadAllocatedMemoryEnabled() ? retval : null;
+	}
+}
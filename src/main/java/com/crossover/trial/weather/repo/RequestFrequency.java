@@ -0,0 +1,70 @@
+package com.crossover.trial.weather.repo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the query requests, per airport and per radius. Airport counters are striped {@link LongAdder}s, so
+ * concurrent queries never contend on the same cell, and they are only summed when the statistics are read. Radius
+ * counters are kept on a bounded {@link RadiusHistogram}.
+ */
+final class RequestFrequency
+{
+	// Normalized IATA code -> number of requests
+	private final Map<String, LongAdder> iataRequests = new ConcurrentHashMap<>();
+
+	// Requested radius histogram
+	private final RadiusHistogram radiusRequests;
+
+	RequestFrequency(RadiusHistogram radiusRequests)
+	{
+		this.radiusRequests = radiusRequests;
+	}
+
+	/**
+	 * Counts a query.
+	 *
+	 * @param key normalized IATA code
+	 * @param radius query radius
+	 */
+	void record(String key, double radius)
+	{
+		counter(iataRequests, key).increment();
+		radiusRequests.record(radius);
+	}
+
+	/**
+	 * Number of queries about an airport.
+	 *
+	 * @param key normalized IATA code
+	 * @return number of requests
+	 */
+	long requests(String key)
+	{
+		LongAdder counter = iataRequests.get(key);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	RadiusHistogram radiusRequests()
+	{
+		return radiusRequests;
+	}
+
+	/**
+	 * Drops the counter of an airport.
+	 *
+	 * @param key normalized IATA code
+	 */
+	void forget(String key)
+	{
+		iataRequests.remove(key);
+	}
+
+	private static LongAdder counter(Map<String, LongAdder> counters, String key)
+	{
+		// get() first, computeIfAbsent locks the bin even when the key is present
+		LongAdder counter = counters.get(key);
+		return counter != null ? counter : counters.computeIfAbsent(key, k -> new LongAdder());
+	}
+}
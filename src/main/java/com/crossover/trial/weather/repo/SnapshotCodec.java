@@ -0,0 +1,277 @@
+package com.crossover.trial.weather.repo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Binary snapshot of the airports and their latest data points. The file is columnar: a header, the numeric columns of
+ * every airport, the data point columns of every point type, the string columns and a CRC32 of everything before it.
+ * Snapshots are written to a temporary file and atomically moved over the previous one, and memory-mapped on load.
+ */
+final class SnapshotCodec
+{
+	private static final int MAGIC = 0x57585331;
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+	private static final int NULL_STRING = -1;
+
+	// String columns, in file order
+	private static final List<Function<AirportData, String>> STRINGS = new ArrayList<>();
+	static
+	{
+		STRINGS.add(AirportData::iata);
+		STRINGS.add(AirportData::icao);
+		STRINGS.add(AirportData::name);
+		STRINGS.add(AirportData::city);
+		STRINGS.add(AirportData::country);
+		STRINGS.add(AirportData::dst);
+	}
+
+	private SnapshotCodec()
+	{}
+
+	/**
+	 * Writes a snapshot of the airports.
+	 *
+	 * @param airports airports, with their atmospheric information
+	 * @param file destination file
+	 * @throws IOException on write errors
+	 */
+	static void write(Collection<AirportData> airports, Path file) throws IOException
+	{
+		List<AirportData> rows = new ArrayList<>(airports);
+		int n = rows.size();
+
+		// Encode the strings first, they are the only variable size columns
+		byte[][][] strings = new byte[STRINGS.size()][n][];
+		int size = HEADER_BYTES + n * (8 * 5);
+		for (int c = 0; c < STRINGS.size(); c++)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				String value = STRINGS.get(c).apply(rows.get(i));
+				strings[c][i] = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+				size += 4 + (value == null ? 0 : strings[c][i].length);
+			}
+		}
+		for (DataPointType type : DataPointType.values())
+		{
+			size += n;
+			for (AirportData ad : rows)
+				size += point(ad.atmosphericInformation(), type) == null ? 0 : 4 * 4 + 8;
+		}
+
+		ByteBuffer buf = ByteBuffer.allocate(size + 8);
+		buf.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(n);
+
+		rows.forEach(ad -> buf.putDouble(ad.lat()));
+		rows.forEach(ad -> buf.putDouble(ad.lon()));
+		rows.forEach(ad -> buf.putDouble(ad.alt() == null ? Double.NaN : ad.alt()));
+		rows.forEach(ad -> buf.putDouble(ad.timezone() == null ? Double.NaN : ad.timezone()));
+		rows.forEach(ad -> buf.putLong(ad.atmosphericInformation().lastUpdateTime()));
+
+		for (DataPointType type : DataPointType.values())
+		{
+			List<DataPoint> points = new ArrayList<>();
+			for (AirportData ad : rows)
+			{
+				DataPoint dp = point(ad.atmosphericInformation(), type);
+				buf.put((byte) (dp == null ? 0 : 1));
+				if (dp != null)
+					points.add(dp);
+			}
+			points.forEach(dp -> buf.putInt(dp.first()));
+			points.forEach(dp -> buf.putInt(dp.second()));
+			points.forEach(dp -> buf.putInt(dp.third()));
+			points.forEach(dp -> buf.putInt(dp.count()));
+			points.forEach(dp -> buf.putDouble(dp.mean()));
+		}
+
+		for (byte[][] column : strings)
+		{
+			for (byte[] value : column)
+			{
+				buf.putInt(value == null ? NULL_STRING : value.length);
+				if (value != null)
+					buf.put(value);
+			}
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buf.array(), 0, buf.position());
+		buf.putLong(crc.getValue());
+		buf.flip();
+
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (buf.hasRemaining())
+				ch.write(buf);
+			ch.force(true);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a snapshot.
+	 *
+	 * @param file snapshot file
+	 * @return airports, with their atmospheric information
+	 * @throws IOException on read errors or if the file is not a valid snapshot
+	 */
+	static List<AirportData> read(Path file) throws IOException
+	{
+		MappedByteBuffer buf;
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+		}
+
+		if (buf.limit() < HEADER_BYTES + 8 || buf.getInt() != MAGIC || buf.getInt() != VERSION)
+			throw new IOException("Not a snapshot file: " + file);
+
+		CRC32 crc = new CRC32();
+		ByteBuffer content = buf.duplicate();
+		content.position(0).limit(buf.limit() - 8);
+		crc.update(content);
+		if (crc.getValue() != buf.getLong(buf.limit() - 8))
+			throw new IOException("Corrupted snapshot file: " + file);
+
+		buf.getLong();
+		int n = buf.getInt();
+
+		double[] lat = doubles(buf, n);
+		double[] lon = doubles(buf, n);
+		double[] alt = doubles(buf, n);
+		double[] timezone = doubles(buf, n);
+		long[] lastUpdate = new long[n];
+		for (int i = 0; i < n; i++)
+			lastUpdate[i] = buf.getLong();
+
+		DataPoint[][] points = new DataPoint[DataPointType.values().length][n];
+		for (DataPoint[] column : points)
+		{
+			List<Integer> present = new ArrayList<>();
+			for (int i = 0; i < n; i++)
+			{
+				if (buf.get() != 0)
+					present.add(i);
+			}
+			int k = present.size();
+			int[] first = ints(buf, k);
+			int[] second = ints(buf, k);
+			int[] third = ints(buf, k);
+			int[] count = ints(buf, k);
+			double[] mean = doubles(buf, k);
+			for (int j = 0; j < k; j++)
+			{
+				column[present.get(j)] = DataPoint.builder()
+						.first(first[j])
+						.second(second[j])
+						.third(third[j])
+						.count(count[j])
+						.mean(mean[j])
+						.build();
+			}
+		}
+
+		String[][] strings = new String[STRINGS.size()][n];
+		for (String[] column : strings)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				int length = buf.getInt();
+				if (length != NULL_STRING)
+				{
+					byte[] value = new byte[length];
+					buf.get(value);
+					column[i] = new String(value, StandardCharsets.UTF_8);
+				}
+			}
+		}
+
+		List<AirportData> retval = new ArrayList<>(n);
+		for (int i = 0; i < n; i++)
+		{
+			AtmosphericInformation info = AtmosphericInformation.builder()
+					.wind(points[DataPointType.WIND.ordinal()][i])
+					.temperature(points[DataPointType.TEMPERATURE.ordinal()][i])
+					.humidity(points[DataPointType.HUMIDITY.ordinal()][i])
+					.pressure(points[DataPointType.PRESSURE.ordinal()][i])
+					.cloudCover(points[DataPointType.CLOUDCOVER.ordinal()][i])
+					.precipitation(points[DataPointType.PRECIPITATION.ordinal()][i])
+					.lastUpdateTime(lastUpdate[i])
+					.build();
+
+			retval.add(AirportData.builder()
+					.iata(strings[0][i])
+					.icao(strings[1][i])
+					.name(strings[2][i])
+					.city(strings[3][i])
+					.country(strings[4][i])
+					.dst(strings[5][i])
+					.lat(lat[i])
+					.lon(lon[i])
+					.alt(Double.isNaN(alt[i]) ? null : alt[i])
+					.timezone(Double.isNaN(timezone[i]) ? null : timezone[i])
+					.atmosphericInformation(info)
+					.build());
+		}
+		return retval;
+	}
+
+	private static DataPoint point(AtmosphericInformation info, DataPointType type)
+	{
+		switch (type)
+		{
+			case WIND:
+				return info.wind();
+			case TEMPERATURE:
+				return info.temperature();
+			case HUMIDITY:
+				return info.humidity();
+			case PRESSURE:
+				return info.pressure();
+			case CLOUDCOVER:
+				return info.cloudCover();
+			case PRECIPITATION:
+				return info.precipitation();
+			default:
+				return null;
+		}
+	}
+
+	private static double[] doubles(ByteBuffer buf, int n)
+	{
+		double[] retval = new double[n];
+		for (int i = 0; i < n; i++)
+			retval[i] = buf.getDouble();
+		return retval;
+	}
+
+	private static int[] ints(ByteBuffer buf, int n)
+	{
+		int[] retval = new int[n];
+		for (int i = 0; i < n; i++)
+			retval[i] = buf.getInt();
+		return retval;
+	}
+}
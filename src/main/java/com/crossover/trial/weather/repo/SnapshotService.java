@@ -0,0 +1,147 @@
+package com.crossover.trial.weather.repo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.crossover.trial.weather.exceptions.WeatherException;
+import com.crossover.trial.weather.model.AirportData;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Periodic snapshots of the {@link WeatherRepository}. The repository is restored from the last snapshot on startup
+ * and a final snapshot is written on shutdown. Disabled unless a snapshot path is configured.
+ * <p>
+ * Also drives the {@link WriteAheadLog}: it's replayed after the snapshot is restored, rotated before every snapshot
+ * and truncated once the snapshot is written. The snapshots are the only compaction of the log, so the log can't be
+ * enabled without them.
+ */
+@Slf4j
+@Component
+public class SnapshotService implements InitializingBean, DisposableBean
+{
+	@Autowired private WeatherRepository repo;
+
+	@Autowired private WriteAheadLog wal;
+
+	// Snapshot file, empty disables the snapshots
+	@Value("${weather.snapshot.path:}") private String path;
+
+	// Interval between snapshots, in millis
+	@Value("${weather.snapshot.interval-millis:60000}") private long intervalMillis;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Restores the last snapshot, replays the log and schedules the next snapshots.
+	 *
+	 * @throws WeatherException if the log is enabled without snapshots
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception
+	{
+		if (wal.isEnabled() && path.isEmpty())
+			throw new WeatherException("Write ahead log enabled without snapshots, it would grow without bound");
+
+		if (!path.isEmpty())
+			restore();
+
+		if (wal.isEnabled())
+		{
+			long start = System.currentTimeMillis();
+			long records = wal.replay(repo);
+			log.info("Write ahead log of {} records replayed in {} ms", records, System.currentTimeMillis() - start);
+
+			wal.open();
+			repo.addListener(wal);
+		}
+
+		if (path.isEmpty())
+			return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "weather-snapshot");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.scheduleWithFixedDelay(this::write, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes the final snapshot.
+	 */
+	@Override
+	public void destroy() throws Exception
+	{
+		if (scheduler == null)
+			return;
+
+		scheduler.shutdown();
+		scheduler.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+		write();
+	}
+
+	/**
+	 * Writes a snapshot of the repository.
+	 *
+	 * @return true if written
+	 */
+	public synchronized boolean write()
+	{
+		long start = System.currentTimeMillis();
+		try
+		{
+			// Mutations after the rotation are on the new segment, the older segments are covered by the snapshot
+			long segment = wal.rotate();
+			Set<AirportData> airports = repo.getAirports();
+			SnapshotCodec.write(airports, Paths.get(path));
+			wal.truncate(segment);
+			log.info("Snapshot of {} airports written in {} ms", airports.size(), System.currentTimeMillis() - start);
+			return true;
+		}
+		catch (IOException e)
+		{
+			log.error("Snapshot error: {}", e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Restores the repository from the last snapshot.
+	 *
+	 * @return true if restored
+	 */
+	public synchronized boolean restore()
+	{
+		Path file = Paths.get(path);
+		if (!Files.exists(file))
+			return false;
+
+		long start = System.currentTimeMillis();
+		try
+		{
+			List<AirportData> airports = SnapshotCodec.read(file);
+			repo.restore(airports);
+			log.info("Snapshot of {} airports restored in {} ms", airports.size(), System.currentTimeMillis() - start);
+			return true;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.error("Snapshot restore error, starting with the default airports: {}", e.getMessage());
+			return false;
+		}
+	}
+}
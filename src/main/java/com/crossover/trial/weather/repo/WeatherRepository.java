@@ -1,37 +1,104 @@
 package com.crossover.trial.weather.repo;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.pcollections.HashPMap;
-import org.pcollections.HashTreePMap;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.AtmosphericInformation;
 import com.crossover.trial.weather.model.DataPoint;
 import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.Geodesy;
+import com.crossover.trial.weather.model.HistoricDataPoint;
+import com.crossover.trial.weather.model.UpdateStatus;
+import com.crossover.trial.weather.model.WeatherUpdate;
 
 @Repository
 public class WeatherRepository implements InitializingBean
 {
-	// Immutable and Thread-safe HashMap of airports
-	private HashPMap<AirportData, Integer> airportData = HashTreePMap.empty();
+	// Size of the spatial index cells, in degrees (~111 km)
+	private static final double GRID_CELL_DEGREES = 1.0;
 
-	// Immutable and Thread-safe HashMap of frecuencies
-	private HashPMap<Double, Integer> radiusFreq = HashTreePMap.empty();
+	// Airports updated during this window are considered as recent data
+	private static final long RECENT_DATA_MILLIS = 86400000;
+	private static final long RECENT_DATA_SLOT_MILLIS = 60000;
+
+	// Thread-safe map of airports, normalized IATA code -> airport state (primary index, O(1))
+	private final Map<String, AirportRecord> airports = new ConcurrentHashMap<>();
+
+	// Metadata of the airports, one row per airport ordinal
+	private volatile AirportStore store = new AirportStore();
+
+	// Keeps the latest data points outside of the heap
+	@Value("${weather.readings.off-heap:false}") private boolean offHeapReadings = false;
+
+	// Latest data points of the airports, by airport ordinal
+	private volatile LatestReadings readings = new HeapReadings();
+
+	// Width of the radius histogram buckets, in km
+	@Value("${weather.radius-histogram.bucket-width:10}") private double radiusBucketWidth = 10;
+
+	// Number of radius histogram buckets, not including the overflow one
+	@Value("${weather.radius-histogram.buckets:100}") private int radiusBuckets = 100;
+
+	// Number of data points kept per airport and point type, 0 disables the history
+	@Value("${weather.history.capacity:120}") private int historyCapacity = 120;
+
+	// Request counters, per airport and per radius
+	private volatile RequestFrequency frequency;
+
+	// Number of airports updated recently
+	private volatile RecentDataCounter recentData;
+
+	// Counters of the writes
+	private volatile RepositoryStats stats = new RepositoryStats();
+
+	// Incremented each time the repository is reset
+	private volatile int generation;
+
+	// Receive the mutations
+	private final List<RepositoryListener> listeners = new CopyOnWriteArrayList<>();
+
+	// Secondary index, normalized ICAO code -> normalized IATA code
+	private final Map<String, String> icaoIndex = new ConcurrentHashMap<>();
+
+	// Spatial index, grid cell -> normalized IATA codes
+	private final GeoGridIndex geoIndex = new GeoGridIndex(GRID_CELL_DEGREES);
+
+	// Max radius of the precomputed neighbours, in km. Larger queries use the spatial index, 0 disables the graph
+	@Value("${weather.neighbours.max-radius:500}") private double neighbourRadius = 500;
+
+	// Precomputed neighbours of every airport
+	private volatile NeighbourGraph graph = newGraph();
 
 	/**
-	 * Gets all the airports data.
+	 * Gets the number of requests of every airport.
 	 *
-	 * @return set of airports
+	 * @return iata code -> number of requests
 	 */
-	public Set<Map.Entry<AirportData, Integer>> getAirportData()
+	public Map<String, Long> getIataFreq()
 	{
-		return airportData.entrySet();
+		return airports.entrySet()
+				.stream()
+				.collect(Collectors.toMap(e -> e.getValue().iata(), e -> frequency.requests(e.getKey())));
 	}
 
 	/**
@@ -41,17 +108,60 @@ public class WeatherRepository implements InitializingBean
 	 */
 	public Set<AirportData> getAirports()
 	{
-		return airportData.keySet();
+		return airports.values().stream().map(AirportRecord::toAirportData).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Gets the number of airports with data points collected during the last day. This is maintained on each update,
+	 * so it doesn't depend on the number of airports.
+	 *
+	 * @return number of airports
+	 */
+	public long getDataSize()
+	{
+		return recentData.count(System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the generation of the repository, which changes every time it's reset by {@link #init()}.
+	 *
+	 * @return generation number
+	 */
+	public int getGeneration()
+	{
+		return generation;
 	}
 
 	/**
 	 * Gets the radius frequency.
 	 *
-	 * @return set of frecuencies
+	 * @return histogram of the requested radius
+	 */
+	public RadiusHistogram getRadiusFreq()
+	{
+		return frequency.radiusRequests();
+	}
+
+	/**
+	 * Gets the internal counters of the repository, since it was last reset: data points accepted per type and
+	 * rejected per reason, contention on the write path, allocations per update, number of airports and estimated
+	 * memory used, in bytes.
+	 *
+	 * @return counters by name
 	 */
-	public Map<Double, Integer> getRadiusFreq()
+	public Map<String, Object> getStats()
 	{
-		return radiusFreq;
+		RepositoryStats s = stats;
+		Map<String, Long> footprint = new LinkedHashMap<>();
+		footprint.put("airports", store.footprint());
+		footprint.put("readings", readings.footprint());
+		footprint.put("history", s.historyBytes());
+
+		Map<String, Object> retval = new LinkedHashMap<>();
+		retval.put("airports", airports.size());
+		retval.put("footprint_bytes", footprint);
+		retval.putAll(s.toMap());
+		return retval;
 	}
 
 	/**
@@ -61,18 +171,117 @@ public class WeatherRepository implements InitializingBean
 	 */
 	public Set<String> getAirportCodes()
 	{
-		return airportData.keySet().stream().map(a -> a.iata()).collect(Collectors.toSet());
+		return airports.values().stream().map(AirportRecord::iata).collect(Collectors.toSet());
 	}
 
 	/**
-	 * Given an iataCode find the airport
+	 * Given an iataCode (or ICAO code) find the airport
 	 *
 	 * @param iataCode as a string
 	 * @return airport or empty if not found
 	 */
 	public Optional<AirportData> findAirport(String iataCode)
 	{
-		return findAirportData(iataCode).map(k -> k.getKey());
+		return Optional.ofNullable(lookup(iataCode)).map(AirportRecord::toAirportData);
+	}
+
+	/**
+	 * Find the airports placed at a distance less or equal than the radius of the given airport.
+	 *
+	 * @param center reference airport
+	 * @param radius distance in km
+	 * @return airports inside the radius, including the reference one
+	 */
+	public List<AirportData> findAirportsNear(AirportData center, double radius)
+	{
+		return streamAirportsNear(center, radius).collect(Collectors.toList());
+	}
+
+	/**
+	 * Find the airports placed at a distance less or equal than the radius of the given airport. Each airport is built
+	 * as the stream reaches it.
+	 *
+	 * @param center reference airport
+	 * @param radius distance in km
+	 * @return airports inside the radius, including the reference one
+	 */
+	public Stream<AirportData> streamAirportsNear(AirportData center, double radius)
+	{
+		return near(center, radius).map(AirportRecord::toAirportData);
+	}
+
+	/**
+	 * Find the atmospheric information of the airports placed at a distance less or equal than the radius of the
+	 * given airport, without building the airports.
+	 *
+	 * @param center reference airport
+	 * @param radius distance in km
+	 * @return atmospheric information of the airports inside the radius, including the reference one
+	 */
+	public Stream<AtmosphericInformation> streamWeatherNear(AirportData center, double radius)
+	{
+		return near(center, radius).map(AirportRecord::atmosphericInformation);
+	}
+
+	private Stream<AirportRecord> near(AirportData center, double radius)
+	{
+		AirportRecord record = airports.get(normalize(center.iata()));
+		List<AirportRecord> near = record == null ? null : graph.near(record, radius);
+		if (near != null)
+			return near.stream();
+
+		return geoIndex.candidates(center.lat(), center.lon(), radius)
+				.stream()
+				.map(airports::get)
+				.filter(r -> r != null && Geodesy.isWithin(center.geoPoint(), r.geoPoint(), radius));
+	}
+
+	/**
+	 * Find the data points of a type collected for an airport in the given period.
+	 *
+	 * @param iataCode IATA (or ICAO) code
+	 * @param pointType point type
+	 * @param from start of the period, inclusive
+	 * @param to end of the period, inclusive
+	 * @return data points, oldest first, or empty if the airport is not found
+	 */
+	public Optional<List<HistoricDataPoint>> findHistory(String iataCode, DataPointType pointType, long from, long to)
+	{
+		return Optional.ofNullable(lookup(iataCode)).map(r -> {
+			DataPointHistory history = r.history(pointType);
+			return history == null ? Collections.<HistoricDataPoint> emptyList() : history.between(from, to);
+		});
+	}
+
+	/**
+	 * Gets the size of the history kept for an airport.
+	 *
+	 * @param iataCode IATA (or ICAO) code
+	 * @return point type -> number of data points, or empty if the airport is not found
+	 */
+	public Optional<Map<DataPointType, Integer>> getHistorySize(String iataCode)
+	{
+		return Optional.ofNullable(lookup(iataCode)).map(r -> {
+			Map<DataPointType, Integer> retval = new EnumMap<>(DataPointType.class);
+			for (DataPointType type : DataPointType.values())
+			{
+				DataPointHistory history = r.history(type);
+				retval.put(type, history == null ? 0 : history.size());
+			}
+			return retval;
+		});
+	}
+
+	/**
+	 * Gets the estimated memory used by the history of an airport.
+	 *
+	 * @param iataCode IATA (or ICAO) code
+	 * @return bytes, or empty if the airport is not found
+	 */
+	public OptionalLong getHistoryFootprint(String iataCode)
+	{
+		AirportRecord record = lookup(iataCode);
+		return record == null ? OptionalLong.empty() : OptionalLong.of(record.historyFootprint());
 	}
 
 	/**
@@ -81,25 +290,162 @@ public class WeatherRepository implements InitializingBean
 	 * @param iataCode the 3 letter IATA code
 	 * @param pointType the point type {@link DataPointType}
 	 * @param dp a datapoint object holding pointType data
+	 * @return outcome of the update
+	 */
+	public UpdateStatus addDataPoint(String iataCode, DataPointType pointType, DataPoint dp)
+	{
+		return update(lookup(iataCode), pointType, dp, System.currentTimeMillis());
+	}
+
+	/**
+	 * Update the airports weather data with a data point collected at the given time.
 	 *
+	 * @param iataCode the 3 letter IATA code
+	 * @param pointType the point type {@link DataPointType}
+	 * @param dp a datapoint object holding pointType data
+	 * @param time time of the update
+	 * @return outcome of the update
 	 */
-	public void addDataPoint(String iataCode, DataPointType pointType, DataPoint dp)
+	UpdateStatus addDataPoint(String iataCode, DataPointType pointType, DataPoint dp, long time)
 	{
-		Optional<Map.Entry<AirportData, Integer>> data = findAirportData(iataCode);
+		return update(lookup(iataCode), pointType, dp, time);
+	}
 
-		data.flatMap(a -> a.getKey().withDataPointToAtmosphereInformation(pointType, dp))
-				.ifPresent(a -> airportData = airportData.plus(a, data.get().getValue()));
+	/**
+	 * Update the weather data of several airports in one pass, all of them with the same update time.
+	 *
+	 * @param updates data points and their airports
+	 * @return the outcome of each update, in the same order
+	 */
+	public List<UpdateStatus> addDataPoints(List<WeatherUpdate> updates)
+	{
+		long now = System.currentTimeMillis();
+		List<UpdateStatus> retval = new ArrayList<>(updates.size());
+		for (WeatherUpdate u : updates)
+		{
+			AirportRecord record = lookup(u.iata());
+			Optional<DataPointType> pointType = DataPointType.find(u.pointType());
+			if (record == null)
+				retval.add(rejected(UpdateStatus.UNKNOWN_AIRPORT));
+			else if (!pointType.isPresent())
+				retval.add(rejected(UpdateStatus.UNKNOWN_POINT_TYPE));
+			else
+				retval.add(update(record, pointType.get(), u.dataPoint(), now));
+		}
+		return retval;
+	}
+
+	/**
+	 * Stores a data point on the airport if it's valid.
+	 *
+	 * @param record airport state, or null if not known
+	 * @param pointType the point type
+	 * @param dp the data point
+	 * @param now time of the update
+	 * @return outcome of the update
+	 */
+	private UpdateStatus update(AirportRecord record, DataPointType pointType, DataPoint dp, long now)
+	{
+		if (record == null)
+			return rejected(UpdateStatus.UNKNOWN_AIRPORT);
+		if (!pointType.accepts(dp))
+		{
+			stats.outOfRange(pointType);
+			return rejected(UpdateStatus.OUT_OF_RANGE);
+		}
+
+		RepositoryStats s = stats;
+		long allocation = s.allocationStart();
+
+		// Applied and notified under the entry lock, so listeners see the updates of an airport in the order they were
+		// applied, and never after the airport was deleted. Only the looked up record is updated, once deleted its
+		// ordinal, and so its IATA code, may belong to another airport
+		AirportRecord applied = airports.computeIfPresent(normalize(record.iata()), (k, current) -> {
+			if (current != record)
+				return current;
+
+			current.update(pointType, dp, now);
+			recentData.update(current.recentSlot(), now);
+
+			for (RepositoryListener l : listeners)
+				l.dataPointAdded(current.iata(), pointType, dp, now);
+			return current;
+		});
+		unlocked();
+
+		s.allocationEnd(allocation);
+		if (applied != record)
+			return rejected(UpdateStatus.UNKNOWN_AIRPORT);
+		s.accepted(pointType);
+		return UpdateStatus.ACCEPTED;
+	}
+
+	/**
+	 * Lets the listeners finish the mutations of this thread, once out of the entry locks.
+	 */
+	private void unlocked()
+	{
+		for (RepositoryListener l : listeners)
+			l.mutationsUnlocked();
+	}
+
+	private UpdateStatus rejected(UpdateStatus status)
+	{
+		stats.rejected(status);
+		return status;
 	}
 
 	/**
-	 * Add a new known airport to our list.
+	 * Add a new known airport to our list, or update its metadata if already known.
 	 *
 	 * @param airport
 	 */
 	public void addAirport(AirportData ad)
 	{
-		airportData = findAirportData(ad.iata()).map(a -> airportData.plus(ad, a.getValue()))
-				.orElse(airportData.plus(ad, 0));
+		graph.add(Collections.singletonList(put(ad)));
+		unlocked();
+	}
+
+	/**
+	 * Add or update several airports.
+	 *
+	 * @param ads airports
+	 */
+	public void addAirports(Collection<AirportData> ads)
+	{
+		List<AirportRecord> records = new ArrayList<>(ads.size());
+		ads.forEach(ad -> records.add(put(ad)));
+		graph.add(records);
+		unlocked();
+	}
+
+	/**
+	 * Stores an airport and updates the indexes, except the neighbour graph.
+	 *
+	 * @param ad airport
+	 * @return airport state
+	 */
+	private AirportRecord put(AirportData ad)
+	{
+		return airports.compute(normalize(ad.iata()), (k, old) -> {
+			AirportRecord retval = old;
+			if (old == null)
+			{
+				retval = new AirportRecord(store, readings, store.add(ad), historyCapacity, stats);
+			}
+			else
+			{
+				unindex(k, old);
+				store.set(old.ordinal(), ad);
+			}
+			index(k, ad);
+
+			// Notified under the entry lock, so listeners see the mutations of an airport in order
+			for (RepositoryListener l : listeners)
+				l.airportAdded(ad);
+
+			return retval;
+		});
 	}
 
 	/**
@@ -110,7 +456,32 @@ public class WeatherRepository implements InitializingBean
 	 */
 	public void deleteAirport(String iataCode)
 	{
-		findAirportData(iataCode).ifPresent(a -> airportData = airportData.minus(a.getKey()));
+		AirportRecord record = lookup(iataCode);
+		if (record != null)
+		{
+			// Only the looked up record is deleted and released, once, whatever the concurrent deletes and adds
+			AtomicBoolean removed = new AtomicBoolean();
+			airports.computeIfPresent(normalize(record.iata()), (k, old) -> {
+				if (old != record)
+					return old;
+
+				removed.set(true);
+				unindex(k, old);
+				frequency.forget(k);
+				recentData.remove(old.recentSlot());
+				stats.historyResized(-old.historyFootprint());
+
+				for (RepositoryListener l : listeners)
+					l.airportDeleted(k);
+				return null;
+			});
+			if (removed.get())
+			{
+				graph.remove(record);
+				record.release();
+				unlocked();
+			}
+		}
 	}
 
 	/**
@@ -121,21 +492,87 @@ public class WeatherRepository implements InitializingBean
 	 */
 	public void updateRequestFrequency(String iata, Double radius)
 	{
-		findAirportData(iata).ifPresent(d -> {
-			airportData = airportData.plus(d.getKey(), d.getValue() + 1);
-			radiusFreq = radiusFreq.plus(radius, radiusFreq.getOrDefault(radius, 0) + 1);
-		});
+		AirportRecord record = lookup(iata);
+		if (record != null)
+			frequency.record(normalize(record.iata()), radius);
 	}
 
 	/**
-	 * Given an iataCode find the airport data (airport and frequency)
+	 * Adds a listener notified of every mutation.
 	 *
-	 * @param iataCode as a string
-	 * @return airport data or empty if not found
+	 * @param listener the listener
 	 */
-	protected Optional<Entry<AirportData, Integer>> findAirportData(String iataCode)
+	public void addListener(RepositoryListener listener)
 	{
-		return airportData.entrySet().stream().filter(ap -> ap.getKey().iata().equalsIgnoreCase(iataCode)).findFirst();
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener.
+	 *
+	 * @param listener the listener
+	 */
+	public void removeListener(RepositoryListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Resolves an IATA code, or an ICAO code, through the indexes.
+	 *
+	 * @param code airport code
+	 * @return airport state or null if not found
+	 */
+	private AirportRecord lookup(String code)
+	{
+		String key = normalize(code);
+		if (key == null)
+			return null;
+
+		AirportRecord record = airports.get(key);
+		if (record == null)
+		{
+			String iata = icaoIndex.get(key);
+			record = iata == null ? null : airports.get(iata);
+		}
+		return record;
+	}
+
+	/**
+	 * Registers the airport on the secondary indexes.
+	 *
+	 * @param key normalized IATA code
+	 * @param ad airport
+	 */
+	private void index(String key, AirportData ad)
+	{
+		geoIndex.add(key, ad.lat(), ad.lon());
+		if (ad.icao() != null)
+			icaoIndex.put(normalize(ad.icao()), key);
+	}
+
+	/**
+	 * Removes the airport from the secondary indexes.
+	 *
+	 * @param key normalized IATA code
+	 * @param record airport state, with the indexed metadata
+	 */
+	private void unindex(String key, AirportRecord record)
+	{
+		geoIndex.remove(key, record.lat(), record.lon());
+		if (record.icao() != null)
+			icaoIndex.remove(normalize(record.icao()), key);
+	}
+
+	/**
+	 * Normalized form of an IATA/ICAO code used as index key.
+	 *
+	 * @param code airport code
+	 * @return trimmed upper case code, or null
+	 */
+	static String normalize(String code)
+	{
+		return code == null ? null : code.trim().toUpperCase(Locale.ROOT);
 	}
 
 	/**
@@ -147,10 +584,9 @@ public class WeatherRepository implements InitializingBean
 		init();
 	}
 
-	public void init()
+	public synchronized void init()
 	{
-		airportData = HashTreePMap.empty();
-		radiusFreq = HashTreePMap.empty();
+		reset();
 
 		addAirport(buildData("BOS", 42.364347, -71.005181));
 		addAirport(buildData("EWR", 40.6925, -74.168667));
@@ -159,6 +595,56 @@ public class WeatherRepository implements InitializingBean
 		addAirport(buildData("MMU", 40.79935, -74.4148747));
 	}
 
+	/**
+	 * Replaces the content of the repository with previously saved airports, keeping their latest data points.
+	 *
+	 * @param ads airports, with their atmospheric information
+	 */
+	public synchronized void restore(Collection<AirportData> ads)
+	{
+		reset();
+
+		List<AirportRecord> records = new ArrayList<>(ads.size());
+		for (AirportData ad : ads)
+		{
+			String key = normalize(ad.iata());
+			AirportRecord record = new AirportRecord(store, readings, store.add(ad), historyCapacity, stats);
+			record.restore(ad.atmosphericInformation());
+			if (ad.atmosphericInformation().notEmpty())
+				recentData.update(record.recentSlot(), ad.atmosphericInformation().lastUpdateTime());
+
+			airports.put(key, record);
+			index(key, ad);
+			records.add(record);
+		}
+		graph.add(records);
+	}
+
+	private void reset()
+	{
+		airports.clear();
+		stats = new RepositoryStats();
+		store = new AirportStore();
+		readings = offHeapReadings ? new OffHeapReadings(stats) : new HeapReadings();
+		frequency = new RequestFrequency(new RadiusHistogram(radiusBucketWidth, radiusBuckets));
+		recentData = new RecentDataCounter(RECENT_DATA_MILLIS, RECENT_DATA_SLOT_MILLIS, stats);
+		generation++;
+		icaoIndex.clear();
+		geoIndex.clear();
+		graph = newGraph();
+	}
+
+	private NeighbourGraph newGraph()
+	{
+		return new NeighbourGraph(neighbourRadius,
+				r -> geoIndex.candidates(r.lat(), r.lon(), neighbourRadius)
+						.stream()
+						.map(airports::get)
+						.filter(Objects::nonNull)
+						.collect(Collectors.toList()),
+				r -> airports.get(normalize(r.iata())) == r);
+	}
+
 	protected AirportData buildData(String iata, double lat, double lon)
 	{
 		return AirportData.builder().iata(iata).lat(lat).lon(lon).build();
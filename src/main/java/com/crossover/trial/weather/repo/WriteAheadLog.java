@@ -0,0 +1,634 @@
+package com.crossover.trial.weather.repo;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only log of the {@link WeatherRepository} mutations, replayed on startup on top of the last snapshot.
+ * Mutations are encoded in a memory buffer and written in groups: a flusher thread writes and fsyncs the buffer every
+ * fsync interval, so a crash loses at most one interval. Appending never does I/O, as it runs under the lock of the
+ * airport: when the buffer is full, or the log fsyncs every mutation, the thread which applied the mutation writes
+ * the buffer once out of the lock, in {@link #mutationsUnlocked()}, together with the records of the other threads. The log is split in numbered segments, rotated by size and
+ * on every snapshot, and the segments covered by a snapshot are deleted.
+ * <p>
+ * Each record is framed as length, CRC32 and payload, so a torn write at the tail stops the replay cleanly. A write
+ * error can leave such a torn record mid segment, so it fails the log: later mutations are dropped and every flush
+ * throws, instead of appending records the replay would never reach.
+ */
+@Slf4j
+@Component
+public class WriteAheadLog implements RepositoryListener, DisposableBean
+{
+	private static final byte DATA_POINT = 1;
+	private static final byte ADD_AIRPORT = 2;
+	private static final byte DELETE_AIRPORT = 3;
+
+	private static final String PREFIX = "wal-";
+	private static final String SUFFIX = ".log";
+	private static final int FRAME_BYTES = 4 + 4;
+	private static final int BUFFER_BYTES = 1 << 20;
+	private static final int NULL_STRING = -1;
+
+	// Directory of the log segments, empty disables the log
+	@Value("${weather.wal.dir:}") private String dir = "";
+
+	// Interval between fsyncs, in millis. 0 fsyncs every mutation
+	@Value("${weather.wal.fsync-millis:10}") private long fsyncMillis = 10;
+
+	// Size of a segment before it's rotated, in bytes
+	@Value("${weather.wal.segment-bytes:67108864}") private long segmentBytes = 64L << 20;
+
+	// Records encoded and not written yet, guarded by this. Grows past its size rather than blocking an appender, the
+	// appenders then write it before applying more mutations
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER_BYTES);
+
+	// Bytes appended to the log, guarded by this
+	private long appended;
+
+	// Bytes appended to the log which are written and fsynced, or dropped by a closed log
+	private volatile long durable;
+
+	// Buffer being written by the flusher, swapped with pending, guarded by io
+	private ByteBuffer writing = ByteBuffer.allocate(BUFFER_BYTES);
+
+	// Per thread scratch buffer and checksum, records are encoded before taking the lock
+	private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+	// Guards the segment channel, held while writing so appenders only wait for the buffer swap
+	private final Object io = new Object();
+
+	// First write error, the log is failed once set
+	private volatile IOException failure;
+
+	private Path directory;
+	private FileChannel channel;
+	private long segment;
+	private long segmentSize;
+
+	private ScheduledExecutorService flusher;
+
+	/**
+	 * @return true if a log directory is configured
+	 */
+	public boolean isEnabled()
+	{
+		return !dir.isEmpty();
+	}
+
+	/**
+	 * @return true if a write error failed the log
+	 */
+	public boolean isFailed()
+	{
+		return failure != null;
+	}
+
+	/**
+	 * Replays the configured log on the repository.
+	 *
+	 * @param repo the repository
+	 * @return number of records replayed
+	 * @throws IOException on read errors
+	 */
+	public long replay(WeatherRepository repo) throws IOException
+	{
+		return replay(repo, Paths.get(dir));
+	}
+
+	/**
+	 * Replays a log on the repository, oldest segment first. The replay stops at the first incomplete or corrupted
+	 * record, which can only be the tail of the log after a crash.
+	 *
+	 * @param repo the repository
+	 * @param directory log directory
+	 * @return number of records replayed
+	 * @throws IOException on read errors
+	 */
+	public static long replay(WeatherRepository repo, Path directory) throws IOException
+	{
+		long retval = 0;
+		for (Path file : segments(directory))
+		{
+			MappedByteBuffer buf;
+			try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+			{
+				buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			}
+
+			CRC32 crc = new CRC32();
+			while (buf.remaining() >= FRAME_BYTES)
+			{
+				int length = buf.getInt();
+				long checksum = buf.getInt() & 0xffffffffL;
+				if (length <= 0 || length > buf.remaining())
+				{
+					log.warn("Incomplete record in {}, replay stopped", file);
+					return retval;
+				}
+
+				ByteBuffer payload = buf.slice();
+				payload.limit(length);
+				crc.reset();
+				crc.update(payload.duplicate());
+				if (crc.getValue() != checksum)
+				{
+					log.warn("Corrupted record in {}, replay stopped", file);
+					return retval;
+				}
+
+				apply(repo, payload);
+				buf.position(buf.position() + length);
+				retval++;
+			}
+		}
+		return retval;
+	}
+
+	/**
+	 * Opens a new segment on the configured directory and starts the flusher.
+	 *
+	 * @throws IOException on write errors
+	 */
+	public void open() throws IOException
+	{
+		open(Paths.get(dir));
+	}
+
+	/**
+	 * Opens a new segment on the directory and starts the flusher.
+	 *
+	 * @param directory log directory
+	 * @throws IOException on write errors
+	 */
+	public void open(Path directory) throws IOException
+	{
+		Files.createDirectories(directory);
+		List<Path> existing = segments(directory);
+
+		synchronized (io)
+		{
+			this.directory = directory;
+			this.segment = existing.isEmpty() ? 0 : sequence(existing.get(existing.size() - 1)) + 1;
+			openSegment();
+		}
+
+		if (fsyncMillis > 0)
+		{
+			flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "weather-wal");
+				t.setDaemon(true);
+				return t;
+			});
+			flusher.scheduleWithFixedDelay(this::flushQuietly, fsyncMillis, fsyncMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes and fsyncs the pending records.
+	 *
+	 * @throws IOException on write errors, or if the log failed
+	 */
+	public void flush() throws IOException
+	{
+		flush(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Writes and fsyncs the pending records, unless the records up to the sequence already are.
+	 *
+	 * @param sequence bytes appended by the last record to write
+	 * @throws IOException on write errors, or if the log failed
+	 */
+	private void flush(long sequence) throws IOException
+	{
+		if (durable >= sequence)
+			return;
+
+		synchronized (io)
+		{
+			// Written by another thread meanwhile, along with its own records
+			if (durable >= sequence)
+				return;
+
+			write();
+			if (channel != null && segmentSize >= segmentBytes)
+				nextSegment();
+		}
+	}
+
+	/**
+	 * Flushes the pending records and starts a new segment. Every mutation applied after this call is on the new
+	 * segment or a later one.
+	 *
+	 * @return sequence of the new segment
+	 * @throws IOException on write errors, or if the log failed
+	 */
+	public long rotate() throws IOException
+	{
+		synchronized (io)
+		{
+			write();
+			if (channel != null && segmentSize > 0)
+				nextSegment();
+			return segment;
+		}
+	}
+
+	/**
+	 * Deletes the segments older than the given one, once a snapshot covers them.
+	 *
+	 * @param sequence first segment to keep
+	 * @throws IOException on delete errors
+	 */
+	public void truncate(long sequence) throws IOException
+	{
+		synchronized (io)
+		{
+			if (directory == null)
+				return;
+
+			for (Path file : segments(directory))
+			{
+				if (sequence(file) < sequence)
+					Files.delete(file);
+			}
+		}
+	}
+
+	/**
+	 * Flushes the pending records and closes the log.
+	 */
+	@Override
+	public void destroy() throws Exception
+	{
+		if (flusher != null)
+		{
+			flusher.shutdown();
+			flusher.awaitTermination(1, TimeUnit.SECONDS);
+		}
+
+		synchronized (io)
+		{
+			if (channel != null)
+			{
+				try
+				{
+					write();
+				}
+				finally
+				{
+					channel.close();
+					channel = null;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void dataPointAdded(String iata, DataPointType pointType, DataPoint dp, long time)
+	{
+		append(buf -> {
+			buf.put(DATA_POINT).putLong(time);
+			putString(buf, iata);
+			buf.put((byte) pointType.ordinal())
+					.putInt(dp.first())
+					.putInt(dp.second())
+					.putInt(dp.third())
+					.putInt(dp.count())
+					.putDouble(dp.mean());
+		});
+	}
+
+	@Override
+	public void airportAdded(AirportData ad)
+	{
+		append(buf -> {
+			buf.put(ADD_AIRPORT);
+			putString(buf, ad.iata());
+			putString(buf, ad.icao());
+			putString(buf, ad.name());
+			putString(buf, ad.city());
+			putString(buf, ad.country());
+			putString(buf, ad.dst());
+			buf.putDouble(ad.lat())
+					.putDouble(ad.lon())
+					.putDouble(ad.alt() == null ? Double.NaN : ad.alt())
+					.putDouble(ad.timezone() == null ? Double.NaN : ad.timezone());
+		});
+	}
+
+	@Override
+	public void airportDeleted(String iata)
+	{
+		append(buf -> {
+			buf.put(DELETE_AIRPORT);
+			putString(buf, iata);
+		});
+	}
+
+	/**
+	 * Writes the records appended by this thread, if the buffer was full or the log fsyncs every mutation.
+	 */
+	@Override
+	public void mutationsUnlocked()
+	{
+		Encoder e = encoders.get();
+		if (!e.flush)
+			return;
+
+		e.flush = false;
+		try
+		{
+			flush(e.sequence);
+		}
+		catch (IOException ex)
+		{
+			// Logged once by write when the log failed
+			log.debug("Write ahead log not flushed: {}", ex.getMessage());
+		}
+	}
+
+	/**
+	 * Encodes and frames a record on the pending buffer, growing it if the record doesn't fit. Called under the lock of
+	 * the airport, so it never writes.
+	 *
+	 * @param encoder writes the record payload
+	 */
+	private void append(RecordEncoder encoder)
+	{
+		// Already reported when the log failed
+		if (failure != null)
+			return;
+
+		Encoder e = encoders.get();
+		ByteBuffer record = e.encode(encoder);
+		int checksum = e.checksum();
+		int length = FRAME_BYTES + record.remaining();
+
+		boolean full;
+		synchronized (this)
+		{
+			if (pending.remaining() < length)
+				pending = grow(pending, length);
+			pending.putInt(record.remaining()).putInt(checksum).put(record);
+			appended += length;
+			e.sequence = appended;
+			full = pending.position() >= BUFFER_BYTES;
+		}
+
+		// Written once out of the lock of the airport
+		if (full || fsyncMillis == 0)
+			e.flush = true;
+	}
+
+	/**
+	 * @return copy of the buffer with room for at least the given bytes more
+	 */
+	private static ByteBuffer grow(ByteBuffer buffer, int bytes)
+	{
+		ByteBuffer retval = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+		buffer.flip();
+		return retval.put(buffer);
+	}
+
+	private void flushQuietly()
+	{
+		try
+		{
+			flush();
+		}
+		catch (IOException e)
+		{
+			// Logged once by write when the log failed
+			log.debug("Write ahead log not flushed: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Swaps the buffers and writes the pending records, called holding io. The written buffer is always cleared, so
+	 * its records are never written twice, and a write error fails the log.
+	 */
+	private void write() throws IOException
+	{
+		long sequence;
+		synchronized (this)
+		{
+			ByteBuffer full = pending;
+			pending = writing;
+			writing = full;
+			sequence = appended;
+		}
+
+		try
+		{
+			if (failure != null)
+				throw new IOException("Write ahead log failed", failure);
+
+			writing.flip();
+			if (channel != null && writing.hasRemaining())
+			{
+				segmentSize += writing.remaining();
+				while (writing.hasRemaining())
+					channel.write(writing);
+				channel.force(false);
+			}
+			durable = sequence;
+		}
+		catch (IOException e)
+		{
+			if (failure == null)
+			{
+				failure = e;
+				log.error("Write ahead log failed, mutations are no longer logged: {}", e.getMessage());
+			}
+			throw e;
+		}
+		finally
+		{
+			// Closed logs drop the records, so late mutations never wait for a full buffer
+			writing.clear();
+
+			// A buffer grown by large records goes back to its size
+			if (writing.capacity() > BUFFER_BYTES)
+				writing = ByteBuffer.allocate(BUFFER_BYTES);
+		}
+	}
+
+	private void nextSegment() throws IOException
+	{
+		channel.close();
+		segment++;
+		openSegment();
+	}
+
+	private void openSegment() throws IOException
+	{
+		channel = FileChannel.open(directory.resolve(String.format("%s%020d%s", PREFIX, segment, SUFFIX)),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		segmentSize = channel.size();
+	}
+
+	private static void apply(WeatherRepository repo, ByteBuffer buf)
+	{
+		byte op = buf.get();
+		switch (op)
+		{
+			case DATA_POINT:
+				long time = buf.getLong();
+				String iata = getString(buf);
+				DataPointType pointType = DataPointType.values()[buf.get()];
+				DataPoint dp = DataPoint.builder()
+						.first(buf.getInt())
+						.second(buf.getInt())
+						.third(buf.getInt())
+						.count(buf.getInt())
+						.mean(buf.getDouble())
+						.build();
+				repo.addDataPoint(iata, pointType, dp, time);
+				break;
+			case ADD_AIRPORT:
+				AirportData.Builder ad = AirportData.builder()
+						.iata(getString(buf))
+						.icao(getString(buf))
+						.name(getString(buf))
+						.city(getString(buf))
+						.country(getString(buf))
+						.dst(getString(buf))
+						.lat(buf.getDouble())
+						.lon(buf.getDouble());
+				double alt = buf.getDouble();
+				double timezone = buf.getDouble();
+				repo.addAirport(ad.alt(Double.isNaN(alt) ? null : alt)
+						.timezone(Double.isNaN(timezone) ? null : timezone)
+						.build());
+				break;
+			case DELETE_AIRPORT:
+				repo.deleteAirport(getString(buf));
+				break;
+			default:
+				throw new IllegalStateException("Unknown record type " + op);
+		}
+	}
+
+	private static List<Path> segments(Path directory) throws IOException
+	{
+		if (!Files.isDirectory(directory))
+			return Collections.emptyList();
+
+		List<Path> retval = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory))
+		{
+			files.filter(f -> f.getFileName().toString().startsWith(PREFIX))
+					.filter(f -> f.getFileName().toString().endsWith(SUFFIX))
+					.forEach(retval::add);
+		}
+		// Zero padded sequences, so the name order is the segment order
+		Collections.sort(retval);
+		return retval;
+	}
+
+	private static long sequence(Path file)
+	{
+		String name = file.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+	}
+
+	private static void putString(ByteBuffer buf, String value)
+	{
+		if (value == null)
+		{
+			buf.putInt(NULL_STRING);
+		}
+		else
+		{
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			buf.putInt(bytes.length).put(bytes);
+		}
+	}
+
+	private static String getString(ByteBuffer buf)
+	{
+		int length = buf.getInt();
+		if (length == NULL_STRING)
+			return null;
+
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Scratch buffer of a thread, and the last record it appended.
+	 */
+	private static class Encoder
+	{
+		private ByteBuffer record = ByteBuffer.allocate(256);
+		private final CRC32 crc = new CRC32();
+
+		// Bytes appended by the last record of the thread
+		long sequence;
+
+		// Whether the thread has to write the buffer once out of the lock of the airport
+		boolean flush;
+
+		ByteBuffer encode(RecordEncoder encoder)
+		{
+			while (true)
+			{
+				try
+				{
+					record.clear();
+					encoder.encode(record);
+					record.flip();
+					return record;
+				}
+				catch (BufferOverflowException e)
+				{
+					record = ByteBuffer.allocate(record.capacity() * 2);
+				}
+			}
+		}
+
+		int checksum()
+		{
+			crc.reset();
+			crc.update(record.duplicate());
+			return (int) crc.getValue();
+		}
+	}
+
+	/**
+	 * Writes the payload of a record.
+	 */
+	@FunctionalInterface
+	private interface RecordEncoder
+	{
+		void encode(ByteBuffer buf);
+	}
+}
@@ -1,12 +1,18 @@
 package com.crossover.trial.weather;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.Permission;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -22,19 +28,30 @@ import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.boot.test.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.web.client.RestTemplate;
 
+import com.crossover.trial.weather.client.CapacitySearch;
+import com.crossover.trial.weather.client.LoadGenerator;
+import com.crossover.trial.weather.client.LoadProfile;
 import com.crossover.trial.weather.client.WeatherClient;
+import com.crossover.trial.weather.config.WireFormat;
+import com.crossover.trial.weather.exceptions.WeatherException;
 import com.crossover.trial.weather.loader.AirportLoader;
 import com.crossover.trial.weather.model.AirportData;
 import com.crossover.trial.weather.model.AtmosphericInformation;
 import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.HistoricDataPoint;
+import com.crossover.trial.weather.model.ImportResult;
+import com.crossover.trial.weather.model.WeatherUpdate;
 import com.crossover.trial.weather.repo.WeatherRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -99,6 +116,48 @@ public class WeatherRestTests
 		assertEquals(dp, airport.atmosphericInformation().humidity());
 	}
 
+	@Test
+	public void collectUpdateWeatherBatch()
+	{
+		String batch = "[{\"iata\":\"BOS\",\"pointType\":\"wind\",\"dataPoint\":{\"first\":1,\"second\":2,"
+				+ "\"third\":3,\"mean\":2.0,\"count\":1}},"
+				+ "{\"iata\":\"non\",\"pointType\":\"wind\",\"dataPoint\":{\"first\":1,\"second\":2,"
+				+ "\"third\":3,\"mean\":2.0,\"count\":1}},"
+				+ "{\"iata\":\"BOS\",\"pointType\":\"wrong\",\"dataPoint\":{\"first\":1,\"second\":2,"
+				+ "\"third\":3,\"mean\":2.0,\"count\":1}},"
+				+ "{\"iata\":\"BOS\",\"pointType\":\"pressure\",\"dataPoint\":{\"first\":1,\"second\":2,"
+				+ "\"third\":3,\"mean\":2.0,\"count\":1}},"
+				+ "{\"iata\":\"BOS\"},"
+				+ "{\"iata\":\"JFK\",\"pointType\":\"humidity\",\"dataPoint\":{\"first\":1,\"second\":2,"
+				+ "\"third\":3,\"mean\":2.0,\"count\":1}}]";
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		ResponseEntity<List<String>> res = rest.exchange(getBase() + "/collect/weather/batch", HttpMethod.POST,
+				new HttpEntity<>(batch, headers), new ParameterizedTypeReference<List<String>>()
+				{});
+		assertEquals(HttpStatus.OK, res.getStatusCode());
+		assertEquals(Arrays.asList("ACCEPTED", "UNKNOWN_AIRPORT", "UNKNOWN_POINT_TYPE", "OUT_OF_RANGE", "MALFORMED",
+				"ACCEPTED"), res.getBody());
+		assertNotNull(repo.findAirport("BOS").get().atmosphericInformation().wind());
+		assertNotNull(repo.findAirport("JFK").get().atmosphericInformation().humidity());
+
+		// Same updates as new line delimited json
+		String ndjson = batch.substring(1, batch.length() - 1).replace("}},{", "}}\n{").replace("\"BOS\"},{",
+				"\"BOS\"}\n{");
+		headers.setContentType(MediaType.valueOf("application/x-ndjson"));
+		res = rest.exchange(getBase() + "/collect/weather/batch", HttpMethod.POST, new HttpEntity<>(ndjson, headers),
+				new ParameterizedTypeReference<List<String>>()
+				{});
+		assertEquals(HttpStatus.OK, res.getStatusCode());
+		assertEquals(6, res.getBody().size());
+
+		// Bad call (not json)
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		assertTrue(!rest.exchange(getBase() + "/collect/weather/batch", HttpMethod.POST,
+				new HttpEntity<>("[{\"iata\":", headers), String.class).getStatusCode().is2xxSuccessful());
+	}
+
 	@Test
 	public void collectGetAirports()
 	{
@@ -109,6 +168,53 @@ public class WeatherRestTests
 		assertEquals(5, airports.size());
 	}
 
+	@Test
+	public void collectAddAirportsJson()
+	{
+		String stn = "{\"iata\":\"STN\",\"icao\":\"EGSS\",\"lat\":51.885,\"lon\":0.235}";
+		String bad = "{\"iata\":\"XXX\",\"lat\":200.0,\"lon\":0.0}";
+		String lhr = "{\"iata\":\"LHR\",\"icao\":\"EGLL\",\"lat\":51.4775,\"lon\":-0.461389}";
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		ResponseEntity<ImportResult> res = rest.exchange(getBase() + "/collect/airports", HttpMethod.POST,
+				new HttpEntity<>("[" + stn + "," + bad + "," + lhr + "]", headers), ImportResult.class);
+		assertEquals(HttpStatus.OK, res.getStatusCode());
+		assertEquals(2, res.getBody().accepted());
+		assertEquals(1, res.getBody().rejected());
+		assertTrue(res.getBody().errors().get(0).startsWith("row 2: "));
+		assertTrue(repo.findAirport("EGSS").isPresent());
+		assertTrue(repo.findAirport("LHR").isPresent());
+		assertFalse(repo.findAirport("XXX").isPresent());
+	}
+
+	@Test
+	public void collectAddAirportsNdjson()
+	{
+		String stn = "{\"iata\":\"STN\",\"icao\":\"EGSS\",\"lat\":51.885,\"lon\":0.235}";
+		String bad = "{\"iata\":\"XXX\",\"lat\":200.0,\"lon\":0.0}";
+		String lhr = "{\"iata\":\"LHR\",\"icao\":\"EGLL\",\"lat\":51.4775,\"lon\":-0.461389}";
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.valueOf("application/x-ndjson"));
+		ResponseEntity<ImportResult> res = rest.exchange(getBase() + "/collect/airports", HttpMethod.POST,
+				new HttpEntity<>(stn + "\n" + bad + "\n" + lhr + "\n", headers), ImportResult.class);
+		assertEquals(HttpStatus.OK, res.getStatusCode());
+		assertEquals(2, res.getBody().accepted());
+		assertEquals(1, res.getBody().rejected());
+		assertTrue(res.getBody().errors().get(0).startsWith("row 2: "));
+		assertEquals(7, repo.getAirportCodes().size());
+
+		// Malformed line, the rows before it are kept
+		repo.init();
+		res = rest.exchange(getBase() + "/collect/airports", HttpMethod.POST,
+				new HttpEntity<>(stn + "\n{\"iata\":\"LHR\",\n" + lhr + "\n", headers), ImportResult.class);
+		assertEquals(HttpStatus.BAD_REQUEST, res.getStatusCode());
+		assertEquals(1, res.getBody().accepted());
+		assertTrue(repo.findAirport("STN").isPresent());
+		assertFalse(repo.findAirport("LHR").isPresent());
+	}
+
 	@Test
 	public void collectGetAirportByIATA()
 	{
@@ -238,10 +344,35 @@ public class WeatherRestTests
 		ResponseEntity<String> res = rest.getForEntity(getBase() + "/query/ping", String.class);
 		assertTrue(res.getStatusCode().is2xxSuccessful());
 		Map<String, Object> map = mapper.readValue(res.getBody(), Map.class);
-		assertEquals(3, map.size());
+		assertEquals(5, map.size());
 		assertNotNull(map.get("datasize"));
 		assertNotNull(map.get("iata_freq"));
 		assertNotNull(map.get("radius_freq"));
+		assertNotNull(map.get("cache"));
+		assertNotNull(map.get("repository"));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void queryMetrics() throws Exception
+	{
+		rest.getForEntity(getBase() + "/query/weather/BOS/0", String.class);
+		rest.getForEntity(getBase() + "/query/weather/AAA/0", String.class);
+		rest.getForEntity(getBase() + "/nowhere", String.class);
+
+		ResponseEntity<String> res = rest.getForEntity(getBase() + "/metrics", String.class);
+		assertTrue(res.getStatusCode().is2xxSuccessful());
+		Map<String, Object> routes = (Map<String, Object>) mapper.readValue(res.getBody(), Map.class).get("routes");
+
+		Map<String, Object> weather = (Map<String, Object>) routes.get("GET /query/weather/{iata}/{radius}");
+		assertTrue(((Number) weather.get("requests")).longValue() >= 2);
+		assertEquals(0, ((Number) weather.get("in_flight")).longValue());
+		Map<String, Number> status = (Map<String, Number>) weather.get("status");
+		assertTrue(status.get("200").longValue() >= 1);
+		assertTrue(status.get("404").longValue() >= 1);
+		assertTrue(((Map<String, Number>) weather.get("latency_ms")).get("max").doubleValue() > 0);
+
+		assertNotNull(routes.get("unmatched"));
 	}
 
 	@Test
@@ -285,6 +416,131 @@ public class WeatherRestTests
 		assertEquals(3, info.getBody().size());
 	}
 
+	@Test
+	public void queryWeatherCache()
+	{
+		DataPoint.Builder p = DataPoint.builder().first(10).second(20).third(30).mean(22.0).count(10);
+		rest.postForEntity(getBase() + "/collect/weather/JFK/wind", p.build(), String.class);
+
+		ParameterizedTypeReference<List<AtmosphericInformation>> type = new ParameterizedTypeReference<List<AtmosphericInformation>>()
+		{};
+		assertEquals(1, rest.exchange(getBase() + "/query/weather/JFK/200", HttpMethod.GET, HttpEntity.EMPTY, type)
+				.getBody()
+				.size());
+		// Same query, served from the cache
+		assertEquals(1, rest.exchange(getBase() + "/query/weather/jfk/200.0", HttpMethod.GET, HttpEntity.EMPTY, type)
+				.getBody()
+				.size());
+
+		// A data point inside the radius invalidates the response
+		rest.postForEntity(getBase() + "/collect/weather/EWR/wind", p.build(), String.class);
+		List<AtmosphericInformation> info = rest
+				.exchange(getBase() + "/query/weather/JFK/200", HttpMethod.GET, HttpEntity.EMPTY, type)
+				.getBody();
+		assertEquals(2, info.size());
+		assertEquals(p.build(), info.get(0).wind());
+	}
+
+	@Test
+	public void queryWeatherStreamed() throws Exception
+	{
+		// No data inside the radius, the reference airport only
+		assertEquals(1, mapper.readValue(rest.getForObject(getBase() + "/query/weather/MMU/2000", String.class),
+				List.class).size());
+
+		DataPoint.Builder p = DataPoint.builder().first(10).second(20).third(30).mean(22.0).count(10);
+		rest.postForEntity(getBase() + "/collect/weather/JFK/wind", p.build(), String.class);
+		rest.postForEntity(getBase() + "/collect/weather/BOS/wind", p.build(), String.class);
+
+		// Radius above the cached ones, compact unless asked otherwise
+		String compact = rest.getForObject(getBase() + "/query/weather/JFK/2000", String.class);
+		String pretty = rest.getForObject(getBase() + "/query/weather/JFK/2000?pretty=true", String.class);
+		assertTrue(!compact.contains("\n"));
+		assertTrue(pretty.contains("\n"));
+		assertEquals(2, mapper.readValue(compact, List.class).size());
+		assertEquals(mapper.readValue(compact, List.class), mapper.readValue(pretty, List.class));
+
+		// Cached radius, pretty printed on demand as well
+		assertTrue(rest.getForObject(getBase() + "/query/weather/JFK/200?pretty=true", String.class).contains("\n"));
+		assertTrue(!rest.getForObject(getBase() + "/query/weather/JFK/200", String.class).contains("\n"));
+	}
+
+	@Test
+	public void queryWeatherSmile() throws Exception
+	{
+		ObjectMapper smile = WireFormat.smileMapper();
+		DataPoint dp = DataPoint.builder().first(10).second(20).third(30).mean(22.0).count(10).build();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.valueOf(WireFormat.SMILE));
+		assertEquals(HttpStatus.OK, rest.exchange(getBase() + "/collect/weather/BOS/wind", HttpMethod.POST,
+				new HttpEntity<>(smile.writeValueAsBytes(dp), headers), String.class).getStatusCode());
+		assertEquals(dp, repo.findAirport("BOS").get().atmosphericInformation().wind());
+
+		// Bad call (not smile)
+		assertTrue(!rest.exchange(getBase() + "/collect/weather/BOS/wind", HttpMethod.POST,
+				new HttpEntity<>(mapper.writeValueAsBytes(dp), headers), String.class)
+				.getStatusCode()
+				.is2xxSuccessful());
+
+		// Batch
+		WeatherUpdate update = WeatherUpdate.builder().iata("JFK").pointType("wind").dataPoint(dp).build();
+		ResponseEntity<List<String>> res = rest.exchange(getBase() + "/collect/weather/batch", HttpMethod.POST,
+				new HttpEntity<>(smile.writeValueAsBytes(Arrays.asList(update)), headers),
+				new ParameterizedTypeReference<List<String>>()
+				{});
+		assertEquals(Arrays.asList("ACCEPTED"), res.getBody());
+
+		// Cached and streamed radius, same content as json
+		headers = new HttpHeaders();
+		headers.setAccept(Arrays.asList(MediaType.valueOf(WireFormat.SMILE)));
+		for (String radius : Arrays.asList("500", "2000"))
+		{
+			String uri = getBase() + "/query/weather/JFK/" + radius;
+			ResponseEntity<byte[]> body = rest.exchange(uri, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+			assertEquals(HttpStatus.OK, body.getStatusCode());
+			assertTrue(MediaType.valueOf(WireFormat.SMILE).isCompatibleWith(body.getHeaders().getContentType()));
+
+			List<AtmosphericInformation> decoded = smile.readValue(body.getBody(),
+					new TypeReference<List<AtmosphericInformation>>() {});
+			assertEquals(2, decoded.size());
+			assertEquals(mapper.readValue(rest.getForObject(uri, String.class),
+					new TypeReference<List<AtmosphericInformation>>() {}), decoded);
+		}
+	}
+
+	@Test
+	public void queryHistory()
+	{
+		// Bad calls (iata doesn't exists, point type wrong)
+		assertEquals(HttpStatus.NOT_FOUND,
+				rest.getForEntity(getBase() + "/query/history/AAA/wind", String.class).getStatusCode());
+		assertEquals(HttpStatus.NOT_FOUND,
+				rest.getForEntity(getBase() + "/query/history/BOS/wrong", String.class).getStatusCode());
+
+		DataPoint.Builder p = DataPoint.builder().first(10).second(20).third(30).mean(22.0).count(10);
+		rest.postForEntity(getBase() + "/collect/weather/BOS/wind", p.build(), String.class);
+		p.mean(25.0);
+		rest.postForEntity(getBase() + "/collect/weather/BOS/wind", p.build(), String.class);
+
+		ResponseEntity<List<HistoricDataPoint>> history = rest.exchange(getBase() + "/query/history/BOS/wind",
+				HttpMethod.GET, HttpEntity.EMPTY, new ParameterizedTypeReference<List<HistoricDataPoint>>()
+				{});
+		assertEquals(2, history.getBody().size());
+		assertEquals(22.0, history.getBody().get(0).mean(), 0.0);
+		assertEquals(25.0, history.getBody().get(1).mean(), 0.0);
+
+		// Empty period
+		history = rest.exchange(getBase() + "/query/history/BOS/wind?to=0", HttpMethod.GET, HttpEntity.EMPTY,
+				new ParameterizedTypeReference<List<HistoricDataPoint>>()
+				{});
+		assertTrue(history.getBody().isEmpty());
+
+		Map<?, ?> size = rest.getForEntity(getBase() + "/query/history/BOS", Map.class).getBody();
+		assertEquals(2, ((Map<?, ?>) size.get("points")).get("WIND"));
+		assertTrue(((Number) size.get("bytes")).longValue() > 0);
+	}
+
 	@Test
 	public void testLoader() throws Exception
 	{
@@ -315,6 +571,45 @@ public class WeatherRestTests
 		assertEquals(5, airports.size());
 	}
 
+	@Test
+	public void testLoaderPipelined() throws Exception
+	{
+		AirportLoader al = new AirportLoader(4);
+
+		String dat = WeatherRestTests.class.getResource("/airports.dat").getFile();
+		ImportResult result = al.uploadPipelined(new FileReader(dat));
+		assertEquals(10, result.accepted());
+		assertEquals(10, repo.getAirportCodes().size());
+
+		repo.init();
+		dat = WeatherRestTests.class.getResource("/airports_bad.dat").getFile();
+		result = al.uploadPipelined(new FileReader(dat));
+		assertEquals(5, result.accepted());
+		assertEquals(3, result.rejected());
+		assertEquals(5, repo.getAirportCodes().size());
+	}
+
+	@Test(timeout = 10000, expected = WeatherException.class)
+	public void testLoaderPipelinedWorkerDies() throws Exception
+	{
+		AirportLoader al = new AirportLoader(1)
+		{
+			@Override
+			protected void uploadWithRetry(AirportData a)
+			{
+				throw new AssertionError("Worker died");
+			}
+		};
+
+		// More rows than the queue holds, so the parser waits on a full queue
+		String dat = new String(Files.readAllBytes(Paths.get(WeatherRestTests.class.getResource("/airports.dat")
+				.toURI())), StandardCharsets.UTF_8);
+		StringBuilder rows = new StringBuilder();
+		for (int i = 0; i < 5; i++)
+			rows.append(dat);
+		al.uploadPipelined(new StringReader(rows.toString()));
+	}
+
 	@Test
 	public void testLoaderMainNoParams() throws Exception
 	{
@@ -349,6 +644,49 @@ public class WeatherRestTests
 		wc.populate("wind", 0, 10, 6, 4, 20);
 		wc.query("BOS");
 		wc.pingQuery();
+
+		wc = new WeatherClient(true);
+		wc.populate("wind", 0, 10, 6, 4, 20);
+		wc.query("BOS");
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testClientLoad()
+	{
+		LoadGenerator load = new LoadGenerator(LoadProfile.parse("--base-uri=" + getBase(), "--rate=200",
+				"--duration-seconds=1", "--concurrency=4", "--radii=0:1,500:1,2000:1"));
+		load.run();
+
+		// Every scheduled request is measured once, answered or not
+		long collects = load.getCollectLatency().count();
+		long requests = load.getQueryLatency().count() + collects;
+		assertEquals(200, requests);
+		assertTrue(load.getQueryLatency().count() > 0 && collects > 0);
+		assertTrue(load.getQueryLatency().percentile(99) > 0);
+
+		// The test server keeps up with the load, but leave room for a stalled request on a busy machine
+		assertTrue("errors: " + load.getErrors(), load.getErrors() <= requests / 20);
+
+		// Every collect answered OK was applied, the bodies are all in range
+		Map<String, Map<String, Number>> ingest = (Map<String, Map<String, Number>>) repo.getStats().get("ingest");
+		long ingested = ingest.values().stream().mapToLong(c -> c.get("count").longValue()).sum();
+		assertTrue(ingested >= collects - load.getErrors() && ingested <= collects);
+		assertEquals(3, load.report().size());
+	}
+
+	@Test
+	public void testClientCapacity()
+	{
+		CapacitySearch search = new CapacitySearch(LoadProfile.parse("--base-uri=" + getBase(), "--rate=50",
+				"--duration-seconds=1", "--concurrency=2", "--steps=2", "--max-p99-millis=5000"));
+		search.run();
+
+		// The search stops at the first step not sustained, which depends on the machine
+		int steps = search.report().size() - 1;
+		assertTrue(steps >= 1 && steps <= 2);
+		if (search.getSustained() != null)
+			assertTrue(search.getSustained().concurrency() <= 4);
 	}
 
 	protected void execLoaderUnderSecurityManager(Consumer<Integer> func, String... file) throws IOException
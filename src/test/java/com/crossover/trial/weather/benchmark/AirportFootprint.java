@@ -0,0 +1,64 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.repo.WeatherRepository;
+
+/**
+ * Heap retained by the airports: a map of {@link AirportData}, as the repository used to keep them, and the
+ * {@link WeatherRepository} with all its indexes. Run with a fixed heap, e.g. -Xms4g -Xmx4g.
+ */
+public final class AirportFootprint
+{
+	private static final int[] SIZES = { 10000, 100000 };
+
+	private AirportFootprint()
+	{}
+
+	public static void main(String[] args)
+	{
+		// Loads the classes and settles the heap before measuring
+		new WeatherRepository().addAirports(SyntheticAirports.generate(1000));
+		usedHeap();
+
+		for (int size : SIZES)
+		{
+			report("map", size, airports -> {
+				Map<String, AirportData> map = new ConcurrentHashMap<>();
+				airports.forEach(ad -> map.put(ad.iata(), ad));
+				return map;
+			});
+			report("repository", size, airports -> {
+				WeatherRepository repo = new WeatherRepository();
+				repo.addAirports(airports);
+				return repo;
+			});
+		}
+	}
+
+	private static void report(String name, int size, Function<List<AirportData>, Object> build)
+	{
+		long before = usedHeap();
+		Object retained = build.apply(SyntheticAirports.generate(size));
+		long bytes = usedHeap() - before;
+		System.out.printf("%-10s %7d airports: %,12d bytes, %5d bytes/airport%n", name, size, bytes, bytes / size);
+
+		// Keeps the structure reachable until measured
+		if (retained.hashCode() == 0)
+			System.out.print("");
+	}
+
+	private static long usedHeap()
+	{
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 5; i++)
+			memory.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,117 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.crossover.trial.weather.RestWeatherCollectorEndpoint;
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.repo.WeatherRepository;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Ingestion load on the single data point endpoint, calling the resource directly with a mix of valid updates and bad
+ * requests: malformed json, unknown point type and unknown airport. The body is given as the bytes the container
+ * reads, so the String variant pays for decoding it first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CollectorIngestionBenchmark
+{
+	// Percentage of bad requests
+	@Param({ "0", "25" })
+	private int invalid;
+
+	private RestWeatherCollectorEndpoint endpoint;
+
+	private Request[] requests;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	@Setup
+	public void setUp()
+	{
+		WeatherRepository repo = new WeatherRepository();
+		repo.init();
+		List<AirportData> airports = SyntheticAirports.generate(1000);
+		repo.addAirports(airports);
+
+		// Server log level, rejected requests are logged at debug
+		((Logger) LoggerFactory.getLogger(RestWeatherCollectorEndpoint.class)).setLevel(Level.INFO);
+
+		endpoint = new RestWeatherCollectorEndpoint();
+		ReflectionTestUtils.setField(endpoint, "mapper", new Jackson2ObjectMapperBuilder().build());
+		ReflectionTestUtils.setField(endpoint, "repo", repo);
+
+		requests = new Request[100];
+		for (int i = 0; i < requests.length; i++)
+		{
+			String iata = airports.get(i).iata();
+			String body = "{\"first\":" + i + ",\"second\":20,\"third\":30,\"mean\":22.0,\"count\":10}";
+			if (i >= invalid)
+				requests[i] = new Request(iata, "wind", body);
+			else if (i % 3 == 0)
+				requests[i] = new Request(iata, "wind", "{\"first\":" + i + ",\"second\":");
+			else if (i % 3 == 1)
+				requests[i] = new Request(iata, "wrong", body);
+			else
+				requests[i] = new Request("ZZZZ", "wind", body);
+		}
+	}
+
+	@Benchmark
+	public int stringBody()
+	{
+		Request r = requests[Math.floorMod(next.getAndIncrement(), requests.length)];
+		return endpoint.updateWeather(r.iata, r.pointType, new String(r.body, StandardCharsets.UTF_8)).getStatus();
+	}
+
+	@Benchmark
+	public int streamedBody()
+	{
+		Request r = requests[Math.floorMod(next.getAndIncrement(), requests.length)];
+		return endpoint.updateWeather(r.iata, r.pointType, MediaType.APPLICATION_JSON_TYPE,
+				new ByteArrayInputStream(r.body)).getStatus();
+	}
+
+	private static final class Request
+	{
+		final String iata;
+		final String pointType;
+		final byte[] body;
+
+		Request(String iata, String pointType, String body)
+		{
+			this.iata = iata;
+			this.pointType = pointType;
+			this.body = body.getBytes(StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.OutputStream;
+
+/**
+ * Discards a response, counting its bytes.
+ */
+final class CountingStream extends OutputStream
+{
+	long count;
+
+	@Override
+	public void write(int b)
+	{
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len)
+	{
+		count += len;
+	}
+}
@@ -0,0 +1,91 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.GeoPoint;
+import com.crossover.trial.weather.model.Geodesy;
+
+/**
+ * Cost of a distance between two airports: the former formula, {@link AirportData#calculateDistanceTo}, the haversine
+ * over precomputed points and the radius check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark
+{
+	private static final int SIZE = 1024;
+
+	private static final Double R = 6372.8;
+
+	private AirportData[] airports;
+
+	private GeoPoint[] points;
+
+	private int next;
+
+	@Setup
+	public void setUp()
+	{
+		List<AirportData> data = SyntheticAirports.generate(SIZE);
+		airports = data.toArray(new AirportData[SIZE]);
+		points = data.stream().map(AirportData::geoPoint).toArray(GeoPoint[]::new);
+	}
+
+	@Benchmark
+	public double legacy()
+	{
+		next = (next + 1) & (SIZE - 1);
+		return legacyDistance(airports[next], airports[(next + 1) & (SIZE - 1)]);
+	}
+
+	@Benchmark
+	public double calculateDistanceTo()
+	{
+		next = (next + 1) & (SIZE - 1);
+		return airports[next].calculateDistanceTo(airports[(next + 1) & (SIZE - 1)]);
+	}
+
+	@Benchmark
+	public double haversine()
+	{
+		next = (next + 1) & (SIZE - 1);
+		return Geodesy.distance(points[next], points[(next + 1) & (SIZE - 1)]);
+	}
+
+	@Benchmark
+	public boolean isWithin()
+	{
+		next = (next + 1) & (SIZE - 1);
+		return Geodesy.isWithin(points[next], points[(next + 1) & (SIZE - 1)], 500);
+	}
+
+	/**
+	 * Copy of the former formula, unboxing the coordinates and converting them on every call.
+	 */
+	private static double legacyDistance(AirportData from, AirportData to)
+	{
+		double deltaLat = Math.toRadians(to.lat() - from.lat());
+		double deltaLon = Math.toRadians(to.lon() - from.lon());
+		double a = Math.pow(Math.sin(deltaLat / 2), 2)
+				+ Math.pow(Math.sin(deltaLon / 2), 2) * Math.cos(from.lat()) * Math.cos(to.lat());
+		double c = 2 * Math.asin(Math.sqrt(a));
+		return R * c;
+	}
+}
@@ -0,0 +1,58 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.repo.WeatherRepository;
+
+/**
+ * Lookup cost of {@link WeatherRepository#findAirport(String)}, it should stay flat whatever the number of airports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindAirportBenchmark
+{
+	@Param({ "5", "1000", "10000", "50000" })
+	private int airports;
+
+	private WeatherRepository repo;
+
+	private String[] codes;
+
+	private int next;
+
+	@Setup
+	public void setUp()
+	{
+		repo = new WeatherRepository();
+		List<AirportData> data = SyntheticAirports.generate(airports);
+		data.forEach(repo::addAirport);
+
+		codes = data.stream().map(a -> a.iata().toLowerCase()).toArray(String[]::new);
+	}
+
+	@Benchmark
+	public Optional<AirportData> findAirport()
+	{
+		next = (next + 1) % codes.length;
+		return repo.findAirport(codes[next]);
+	}
+}
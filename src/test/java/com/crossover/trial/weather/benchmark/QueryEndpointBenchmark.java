@@ -0,0 +1,131 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.crossover.trial.weather.RestWeatherQueryEndpoint;
+import com.crossover.trial.weather.SerializedList;
+import com.crossover.trial.weather.StreamedList;
+import com.crossover.trial.weather.WeatherResponseCache;
+import com.crossover.trial.weather.config.StreamedListWriter;
+import com.crossover.trial.weather.config.WireFormat;
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repo.WeatherRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cost of the query endpoint without the http layer: {@link RestWeatherQueryEndpoint#weather} over the airports in
+ * turn, including writing the response as the container would, and {@link RestWeatherQueryEndpoint#ping}. The
+ * endpoint is wired as in the server, with the response cache on and every airport holding data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryEndpointBenchmark
+{
+	/**
+	 * The endpoint and its repository.
+	 */
+	@State(Scope.Benchmark)
+	public static class Endpoint
+	{
+		@Param({ "5", "1000", "10000", "50000" })
+		private int airports;
+
+		private RestWeatherQueryEndpoint endpoint;
+
+		private ObjectMapper mapper = new Jackson2ObjectMapperBuilder().build();
+
+		private StreamedListWriter writer = new StreamedListWriter(mapper, WireFormat.smileMapper());
+
+		private String[] codes;
+
+		private int next;
+
+		@Setup
+		public void setUp() throws Exception
+		{
+			WeatherRepository repo = new WeatherRepository();
+			repo.init();
+			List<AirportData> data = SyntheticAirports.generate(airports);
+			repo.addAirports(data);
+
+			DataPoint dp = DataPoint.builder().first(10).second(20).third(30).mean(22.0).count(10).build();
+			data.forEach(a -> repo.addDataPoint(a.iata(), DataPointType.WIND, dp));
+			codes = data.stream().map(AirportData::iata).toArray(String[]::new);
+
+			WeatherResponseCache cache = new WeatherResponseCache();
+			ReflectionTestUtils.setField(cache, "repo", repo);
+			ReflectionTestUtils.setField(cache, "mapper", mapper);
+			ReflectionTestUtils.setField(cache, "capacity", 1024);
+			cache.afterPropertiesSet();
+
+			endpoint = new RestWeatherQueryEndpoint();
+			ReflectionTestUtils.setField(endpoint, "repo", repo);
+			ReflectionTestUtils.setField(endpoint, "cache", cache);
+			ReflectionTestUtils.setField(endpoint, "mapper", mapper);
+			ReflectionTestUtils.setField(endpoint, "pingRefreshMillis", 1000L);
+		}
+
+		String nextCode()
+		{
+			next = (next + 1) % codes.length;
+			return codes[next];
+		}
+	}
+
+	/**
+	 * Radius of the weather queries.
+	 */
+	@State(Scope.Benchmark)
+	public static class Radius
+	{
+		@Param({ "0", "100", "500", "2000" })
+		private String radius;
+	}
+
+	@Benchmark
+	public long weather(Endpoint e, Radius r) throws IOException
+	{
+		Response response = e.endpoint.weather(e.nextCode(), r.radius);
+
+		CountingStream out = new CountingStream();
+		Object entity = response.getEntity();
+		if (entity instanceof SerializedList)
+			out.write(((SerializedList<?>) entity).json());
+		else if (entity instanceof StreamedList)
+			e.writer.writeTo((StreamedList<?>) entity, StreamedList.class, StreamedList.class, null,
+					MediaType.APPLICATION_JSON_TYPE, null, out);
+		else
+			e.mapper.writeValue(out, entity);
+		return out.count;
+	}
+
+	@Benchmark
+	public String ping(Endpoint e)
+	{
+		return e.endpoint.ping();
+	}
+}
@@ -0,0 +1,60 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.repo.WeatherRepository;
+
+/**
+ * Cost of {@link WeatherRepository#findAirportsNear(AirportData, double)}, it should follow the result size rather
+ * than the number of airports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RadiusQueryBenchmark
+{
+	@Param({ "1000", "10000", "50000" })
+	private int airports;
+
+	@Param({ "100", "500", "2000" })
+	private double radius;
+
+	private WeatherRepository repo;
+
+	private AirportData[] centers;
+
+	private int next;
+
+	@Setup
+	public void setUp()
+	{
+		repo = new WeatherRepository();
+		SyntheticAirports.generate(airports).forEach(repo::addAirport);
+
+		centers = repo.getAirports().stream().limit(100).toArray(AirportData[]::new);
+	}
+
+	@Benchmark
+	public List<AirportData> findAirportsNear()
+	{
+		next = (next + 1) % centers.length;
+		return repo.findAirportsNear(centers[next], radius);
+	}
+}
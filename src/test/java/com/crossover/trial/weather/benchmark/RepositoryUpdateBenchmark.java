@@ -0,0 +1,88 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.model.UpdateStatus;
+import com.crossover.trial.weather.repo.WeatherRepository;
+
+/**
+ * Cost of the repository writes done on every request: {@link WeatherRepository#addDataPoint} on collection and
+ * {@link WeatherRepository#updateRequestFrequency} on each radius query, over the airports in turn.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryUpdateBenchmark
+{
+	private static final DataPointType[] TYPES = DataPointType.values();
+
+	@Param({ "5", "1000", "10000", "50000" })
+	private int airports;
+
+	private WeatherRepository repo;
+
+	private String[] codes;
+
+	private DataPoint[] dataPoints;
+
+	private int next;
+
+	@Setup
+	public void setUp()
+	{
+		repo = new WeatherRepository();
+		repo.init();
+		List<AirportData> data = SyntheticAirports.generate(airports);
+		repo.addAirports(data);
+
+		codes = data.stream().map(AirportData::iata).toArray(String[]::new);
+
+		// A valid data point of each type
+		dataPoints = new DataPoint[TYPES.length];
+		for (DataPointType t : TYPES)
+		{
+			dataPoints[t.ordinal()] = DataPoint.builder()
+					.first(10)
+					.second(20)
+					.third(30)
+					.mean(t == DataPointType.PRESSURE ? 700.0 : 22.0)
+					.count(10)
+					.build();
+		}
+	}
+
+	@Benchmark
+	public UpdateStatus addDataPoint()
+	{
+		// Every type of every airport in turn
+		next = (next + 1) % (codes.length * TYPES.length);
+		DataPointType type = TYPES[next % TYPES.length];
+		return repo.addDataPoint(codes[next / TYPES.length], type, dataPoints[type.ordinal()]);
+	}
+
+	@Benchmark
+	public void updateRequestFrequency()
+	{
+		next = (next + 1) % codes.length;
+		repo.updateRequestFrequency(codes[next], (double) (next % 2000));
+	}
+}
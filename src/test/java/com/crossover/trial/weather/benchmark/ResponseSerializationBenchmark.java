@@ -0,0 +1,109 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.StreamedList;
+import com.crossover.trial.weather.config.StreamedListWriter;
+import com.crossover.trial.weather.config.WireFormat;
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repo.WeatherRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Cost of writing a large radius response: the list built and then pretty printed, as it used to be, against the
+ * compact output streamed as the airports are found. Each benchmark returns the bytes written, run with -prof gc for
+ * the allocations per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark
+{
+	@Param({ "10000" })
+	private int airports;
+
+	@Param({ "1000", "5000" })
+	private double radius;
+
+	private WeatherRepository repo;
+
+	private AirportData center;
+
+	private ObjectMapper mapper = new ObjectMapper();
+
+	private ObjectMapper prettyMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	private StreamedListWriter writer = new StreamedListWriter(mapper, WireFormat.smileMapper());
+
+	@Setup
+	public void setUp()
+	{
+		repo = new WeatherRepository();
+		repo.init();
+		List<AirportData> data = SyntheticAirports.generate(airports);
+		repo.addAirports(data);
+
+		DataPoint dp = DataPoint.builder().first(10).second(20).third(30).mean(22.0).count(10).build();
+		data.forEach(a -> repo.addDataPoint(a.iata(), DataPointType.WIND, dp));
+		center = data.get(0);
+	}
+
+	@Benchmark
+	public long materializedPretty() throws IOException
+	{
+		CountingStream out = new CountingStream();
+		prettyMapper.writeValue(out, materialize());
+		return out.count;
+	}
+
+	@Benchmark
+	public long materializedCompact() throws IOException
+	{
+		CountingStream out = new CountingStream();
+		mapper.writeValue(out, materialize());
+		return out.count;
+	}
+
+	@Benchmark
+	public long streamed() throws IOException
+	{
+		StreamedList<AtmosphericInformation> list = new StreamedList<>(
+				() -> repo.streamWeatherNear(center, radius).filter(AtmosphericInformation::notEmpty),
+				center::atmosphericInformation);
+
+		CountingStream out = new CountingStream();
+		writer.writeTo(list, StreamedList.class, StreamedList.class, null, null, null, out);
+		return out.count;
+	}
+
+	private List<AtmosphericInformation> materialize()
+	{
+		return repo.findAirportsNear(center, radius)
+				.stream()
+				.map(AirportData::atmosphericInformation)
+				.filter(AtmosphericInformation::notEmpty)
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,69 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.crossover.trial.weather.model.AirportData;
+
+/**
+ * Generates reproducible sets of fake airports for the benchmarks.
+ */
+public final class SyntheticAirports
+{
+	// URL safe symbols, 40^3 unique 3 letter codes
+	private static final String CODE_SYMBOLS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_.~";
+
+	private static final long SEED = 42L;
+
+	// Distinct cities and countries, airports share them as real ones do
+	private static final int CITIES = 5000;
+	private static final int COUNTRIES = 200;
+
+	private SyntheticAirports()
+	{}
+
+	/**
+	 * IATA code of the n-th synthetic airport.
+	 *
+	 * @param n airport number
+	 * @return 3 letter code
+	 */
+	public static String iata(int n)
+	{
+		int b = CODE_SYMBOLS.length();
+		return new StringBuilder(3).append(CODE_SYMBOLS.charAt(n / (b * b) % b))
+				.append(CODE_SYMBOLS.charAt(n / b % b))
+				.append(CODE_SYMBOLS.charAt(n % b))
+				.toString();
+	}
+
+	/**
+	 * Builds a list of airports spread over the globe.
+	 *
+	 * @param size number of airports
+	 * @return airports
+	 */
+	public static List<AirportData> generate(int size)
+	{
+		Random random = new Random(SEED);
+		List<AirportData> airports = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+		{
+			int city = random.nextInt(CITIES);
+			airports.add(AirportData.builder()
+					.iata(iata(i))
+					.icao("X" + iata(i))
+					.name("Airport " + iata(i))
+					.city("City " + city)
+					.country("Country " + city % COUNTRIES)
+					.lat(random.nextDouble() * 180 - 90)
+					.lon(random.nextDouble() * 360 - 180)
+					.alt((double) random.nextInt(5000))
+					.timezone((double) (random.nextInt(25) - 12))
+					.dst("E")
+					.build());
+		}
+		return airports;
+	}
+}
@@ -0,0 +1,122 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.crossover.trial.weather.config.WireFormat;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Encode and decode costs of json against smile, for a collected data point and for a radius response. Run with -prof
+ * gc for the allocations, the encoded sizes are printed on setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark
+{
+	@Param({ "json", "smile" })
+	private String format;
+
+	// Airports on the radius response
+	@Param({ "100" })
+	private int airports;
+
+	private DataPoint dataPoint;
+	private List<AtmosphericInformation> response;
+
+	private ObjectWriter writer;
+	private ObjectReader dataPointReader;
+	private ObjectReader responseReader;
+
+	private byte[] encodedDataPoint;
+	private byte[] encodedResponse;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		Random random = new Random(42);
+		dataPoint = dataPoint(random);
+		response = new ArrayList<>(airports);
+		for (int i = 0; i < airports; i++)
+		{
+			response.add(AtmosphericInformation.builder()
+					.temperature(dataPoint(random))
+					.wind(dataPoint(random))
+					.humidity(dataPoint(random))
+					.pressure(dataPoint(random))
+					.build());
+		}
+
+		// Same configuration as the server mappers
+		ObjectMapper mapper = "smile".equals(format) ? WireFormat.smileMapper() : new Jackson2ObjectMapperBuilder().build();
+		writer = mapper.writer();
+		dataPointReader = mapper.readerFor(DataPoint.class);
+		responseReader = mapper.readerFor(mapper.getTypeFactory().constructCollectionType(List.class,
+				AtmosphericInformation.class));
+
+		encodedDataPoint = writer.writeValueAsBytes(dataPoint);
+		encodedResponse = writer.writeValueAsBytes(response);
+		System.out.printf("%n%s: data point %d bytes, response %d bytes%n", format, encodedDataPoint.length,
+				encodedResponse.length);
+	}
+
+	@Benchmark
+	public byte[] encodeDataPoint() throws IOException
+	{
+		return writer.writeValueAsBytes(dataPoint);
+	}
+
+	@Benchmark
+	public DataPoint decodeDataPoint() throws IOException
+	{
+		return dataPointReader.readValue(encodedDataPoint);
+	}
+
+	@Benchmark
+	public byte[] encodeResponse() throws IOException
+	{
+		return writer.writeValueAsBytes(response);
+	}
+
+	@Benchmark
+	public List<AtmosphericInformation> decodeResponse() throws IOException
+	{
+		return responseReader.readValue(encodedResponse);
+	}
+
+	private static DataPoint dataPoint(Random random)
+	{
+		int first = random.nextInt(50);
+		return DataPoint.builder()
+				.first(first)
+				.second(first + random.nextInt(50))
+				.third(first + 50 + random.nextInt(50))
+				.mean(first + random.nextDouble() * 50)
+				.count(random.nextInt(1000))
+				.build();
+	}
+}
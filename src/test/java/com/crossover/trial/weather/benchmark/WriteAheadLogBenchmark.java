@@ -0,0 +1,99 @@
+package com.crossover.trial.weather.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+import com.crossover.trial.weather.repo.WeatherRepository;
+import com.crossover.trial.weather.repo.WriteAheadLog;
+
+/**
+ * Ingestion throughput of {@link WeatherRepository#addDataPoint} with the write ahead log on and off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class WriteAheadLogBenchmark
+{
+	@Param({ "false", "true" })
+	private boolean wal;
+
+	private WeatherRepository repo;
+
+	private WriteAheadLog log;
+
+	private Path dir;
+
+	private String[] codes;
+
+	private DataPoint dp = DataPoint.builder().first(1).second(2).third(3).mean(20.0).count(4).build();
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		repo = new WeatherRepository();
+		repo.init();
+		List<AirportData> data = SyntheticAirports.generate(1000);
+		repo.addAirports(data);
+		codes = data.stream().map(AirportData::iata).toArray(String[]::new);
+
+		if (wal)
+		{
+			dir = Files.createTempDirectory("wal");
+			log = new WriteAheadLog();
+			log.open(dir);
+			repo.addListener(log);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception
+	{
+		if (log != null)
+		{
+			log.destroy();
+			try (Stream<Path> files = Files.walk(dir))
+			{
+				files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor
+	{
+		int next;
+	}
+
+	@Benchmark
+	public void addDataPoint(Cursor cursor)
+	{
+		cursor.next = (cursor.next + 1) % codes.length;
+		repo.addDataPoint(codes[cursor.next], DataPointType.TEMPERATURE, dp);
+	}
+}
@@ -0,0 +1,54 @@
+package com.crossover.trial.weather.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the log-linear latency histogram.
+ */
+public class LatencyHistogramTest
+{
+	@Test
+	public void percentilesWithinPrecision()
+	{
+		Random random = new Random(42);
+		long[] values = new long[100_000];
+		LatencyHistogram h = new LatencyHistogram();
+		for (int i = 0; i < values.length; i++)
+		{
+			// Log-normal like latencies, from microseconds to seconds
+			values[i] = (long) Math.exp(7 + random.nextGaussian() * 3);
+			h.record(values[i]);
+		}
+		Arrays.sort(values);
+
+		assertEquals(values.length, h.count());
+		assertEquals(values[values.length - 1], h.max());
+		for (double p : new double[] { 1, 50, 90, 99, 99.9, 100 })
+		{
+			long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+			long value = h.percentile(p);
+			assertTrue(p + ": " + value + " vs " + exact, value >= exact && value <= exact * 1.016 + 1);
+		}
+	}
+
+	@Test
+	public void edgeValues()
+	{
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.percentile(99));
+		assertEquals(0, h.mean(), 0);
+
+		h.record(-5);
+		h.record(127);
+		h.record(Long.MAX_VALUE);
+		assertEquals(0, h.percentile(0));
+		assertEquals(127, h.percentile(50));
+		assertEquals(Long.MAX_VALUE, h.percentile(100));
+	}
+}
@@ -0,0 +1,66 @@
+package com.crossover.trial.weather.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of the distance formulas against known airport distances.
+ */
+public class GeodesyTest
+{
+	private static final GeoPoint BNA = GeoPoint.of(36.12, -86.67);
+	private static final GeoPoint LAX = GeoPoint.of(33.94, -118.40);
+	private static final GeoPoint JFK = GeoPoint.of(40.639751, -73.778925);
+	private static final GeoPoint LHR = GeoPoint.of(51.4706, -0.461941);
+	private static final GeoPoint SYD = GeoPoint.of(-33.946111, 151.177222);
+	private static final GeoPoint SIN = GeoPoint.of(1.350189, 103.994433);
+
+	@Test
+	public void knownDistances()
+	{
+		// Reference value of the haversine formula with the same earth radius
+		assertEquals(2887.2599506, Geodesy.distance(BNA, LAX), 1e-6);
+
+		// Published great circle distances, within the error of a spherical earth
+		assertEquals(5540, Geodesy.distance(JFK, LHR), 5540 * 0.005);
+		assertEquals(6290, Geodesy.distance(SYD, SIN), 6290 * 0.005);
+	}
+
+	@Test
+	public void edgeCases()
+	{
+		assertEquals(0, Geodesy.distance(LAX, LAX), 0);
+		assertEquals(Geodesy.distance(BNA, LAX), Geodesy.distance(LAX, BNA), 1e-9);
+		assertEquals(Math.PI * Geodesy.EARTH_RADIUS, Geodesy.distance(GeoPoint.of(0, 0), GeoPoint.of(0, 180)), 1e-6);
+		assertEquals(Math.PI * Geodesy.EARTH_RADIUS, Geodesy.distance(GeoPoint.of(90, 0), GeoPoint.of(-90, 0)), 1e-6);
+
+		// Across the antimeridian
+		assertEquals(Geodesy.distance(GeoPoint.of(0, 0), GeoPoint.of(0, 2)),
+				Geodesy.distance(GeoPoint.of(0, 179), GeoPoint.of(0, -179)), 1e-6);
+	}
+
+	@Test
+	public void isWithinAgreesWithDistance()
+	{
+		assertTrue(Geodesy.isWithin(BNA, LAX, 2888));
+		assertFalse(Geodesy.isWithin(BNA, LAX, 2887));
+		assertTrue(Geodesy.isWithin(LAX, LAX, 0));
+		assertTrue(Geodesy.isWithin(JFK, SYD, 30000));
+
+		Random random = new Random(42);
+		for (int i = 0; i < 10000; i++)
+		{
+			GeoPoint a = GeoPoint.of(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+			GeoPoint b = GeoPoint.of(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+			double radius = random.nextDouble() * 20000;
+			double d = Geodesy.distance(a, b);
+			if (Math.abs(d - radius) > 1e-6)
+				assertEquals(d <= radius, Geodesy.isWithin(a, b, radius));
+		}
+	}
+}
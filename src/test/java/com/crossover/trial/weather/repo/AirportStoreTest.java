@@ -0,0 +1,75 @@
+package com.crossover.trial.weather.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.crossover.trial.weather.benchmark.SyntheticAirports;
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+
+/**
+ * Tests of the columnar airport store.
+ */
+public class AirportStoreTest
+{
+	@Test
+	public void buildsTheStoredAirports()
+	{
+		List<AirportData> airports = SyntheticAirports.generate(1000);
+		AirportStore store = new AirportStore();
+		airports.forEach(store::add);
+
+		AtmosphericInformation info = AtmosphericInformation.builder()
+				.wind(DataPoint.builder().first(1).second(2).third(3).mean(2.0).count(4).build())
+				.build();
+		assertEquals(1000, store.size());
+		for (int i = 0; i < airports.size(); i++)
+		{
+			AirportData ad = store.get(i, info);
+			assertEquals(airports.get(i).withAtmosphericInformation(info), ad);
+			assertEquals(info, ad.atmosphericInformation());
+		}
+	}
+
+	@Test
+	public void overwritesRows()
+	{
+		AirportStore store = new AirportStore();
+		AirportData bos = AirportData.builder().iata("BOS").icao("KBOS").city("Boston").lat(42.36).lon(-71.0).build();
+		int ordinal = store.add(bos);
+
+		AirportData moved = AirportData.builder().iata("BOS").lat(40.0).lon(-70.0).alt(5.0).build();
+		store.set(ordinal, moved);
+
+		AirportData ad = store.get(ordinal, AtmosphericInformation.builder().build());
+		assertEquals(moved, ad);
+		assertNull(ad.icao());
+		assertNull(ad.city());
+		assertEquals(40.0, store.lat(ordinal), 0);
+		assertEquals(Math.toRadians(-70.0), store.geoPoint(ordinal).lon(), 0);
+	}
+
+	@Test
+	public void reusesRemovedRows()
+	{
+		AirportStore store = new AirportStore();
+		int bos = store.add(AirportData.builder().iata("BOS").lat(42.36).lon(-71.0).build());
+		int jfk = store.add(AirportData.builder().iata("JFK").lat(40.64).lon(-73.78).build());
+		long footprint = store.footprint();
+
+		store.remove(bos);
+		assertEquals(1, store.size());
+
+		AirportData lga = AirportData.builder().iata("LGA").lat(40.77).lon(-73.87).build();
+		assertEquals(bos, store.add(lga));
+		assertEquals(lga, store.get(bos, AtmosphericInformation.builder().build()));
+		assertEquals("JFK", store.iata(jfk));
+		assertEquals(2, store.size());
+		assertEquals(footprint, store.footprint());
+	}
+}
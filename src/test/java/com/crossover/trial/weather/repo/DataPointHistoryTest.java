@@ -0,0 +1,59 @@
+package com.crossover.trial.weather.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.HistoricDataPoint;
+
+/**
+ * Tests of the data point ring buffer.
+ */
+public class DataPointHistoryTest
+{
+	@Test
+	public void keepsTheNewestPoints()
+	{
+		DataPointHistory history = new DataPointHistory(3, new RepositoryStats());
+		for (int i = 0; i < 5; i++)
+			history.add(i * 1000, DataPoint.builder().first(i).second(i).third(i).mean((double) i).count(1).build());
+
+		List<HistoricDataPoint> points = history.between(Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(3, history.size());
+		assertEquals(3, points.size());
+		assertEquals(2000, points.get(0).timestamp());
+		assertEquals(4, points.get(2).first());
+	}
+
+	@Test
+	public void filtersByPeriod()
+	{
+		DataPointHistory history = new DataPointHistory(10, new RepositoryStats());
+		for (int i = 0; i < 5; i++)
+			history.add(i * 1000, DataPoint.builder().first(i).second(i).third(i).mean((double) i).count(1).build());
+
+		List<HistoricDataPoint> points = history.between(1000, 3000);
+		assertEquals(3, points.size());
+		assertEquals(1000, points.get(0).timestamp());
+		assertEquals(3000, points.get(2).timestamp());
+	}
+
+	@Test
+	public void growsUpToTheCapacity()
+	{
+		DataPointHistory history = new DataPointHistory(20, new RepositoryStats());
+		long empty = history.footprint();
+		for (int i = 0; i < 25; i++)
+			history.add(i * 1000, DataPoint.builder().first(i).second(i).third(i).mean((double) i).count(1).build());
+
+		List<HistoricDataPoint> points = history.between(Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(20, points.size());
+		assertEquals(5000, points.get(0).timestamp());
+		assertEquals(24000, points.get(19).timestamp());
+		assertTrue(history.footprint() > empty);
+	}
+}
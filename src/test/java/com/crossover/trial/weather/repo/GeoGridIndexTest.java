@@ -0,0 +1,65 @@
+package com.crossover.trial.weather.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests of the grid index under concurrent adds and removes.
+ */
+public class GeoGridIndexTest
+{
+	private static final int WRITERS = 8;
+	private static final int OPERATIONS = 20000;
+
+	@Test
+	public void addSurvivesConcurrentRemoveOfTheCell() throws Exception
+	{
+		GeoGridIndex index = new GeoGridIndex(1.0);
+		ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+		try
+		{
+			// Every writer churns its own airport on the same cell, emptying it over and over
+			CountDownLatch ready = new CountDownLatch(WRITERS);
+			List<Future<Integer>> writers = new ArrayList<>();
+			for (int w = 0; w < WRITERS; w++)
+			{
+				String code = "W" + w;
+				writers.add(executor.submit(() -> {
+					ready.countDown();
+					ready.await();
+
+					int lost = 0;
+					for (int i = 0; i < OPERATIONS; i++)
+					{
+						index.add(code, 42.5, -71.5);
+						if (!index.candidates(42.5, -71.5, 1).contains(code))
+							lost++;
+						index.remove(code, 42.5, -71.5);
+					}
+					index.add(code, 42.5, -71.5);
+					return lost;
+				}));
+			}
+
+			for (Future<Integer> f : writers)
+				assertEquals(Integer.valueOf(0), f.get());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		List<String> candidates = index.candidates(42.5, -71.5, 1);
+		for (int w = 0; w < WRITERS; w++)
+			assertTrue(candidates.contains("W" + w));
+	}
+}
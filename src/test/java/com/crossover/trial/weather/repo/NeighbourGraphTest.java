@@ -0,0 +1,81 @@
+package com.crossover.trial.weather.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.crossover.trial.weather.benchmark.SyntheticAirports;
+import com.crossover.trial.weather.model.AirportData;
+
+/**
+ * Tests of the radius queries answered by the neighbour graph, against a full scan.
+ */
+public class NeighbourGraphTest
+{
+	private static final double[] RADII = { 0, 15, 50, 200, 499, 500, 1000 };
+
+	private WeatherRepository repo;
+
+	@Before
+	public void setUp()
+	{
+		repo = new WeatherRepository();
+		repo.init();
+		repo.addAirports(SyntheticAirports.generate(3000));
+	}
+
+	@Test
+	public void matchesFullScan()
+	{
+		List<AirportData> centers = repo.getAirports().stream().limit(200).collect(Collectors.toList());
+		for (AirportData center : centers)
+		{
+			for (double radius : RADII)
+				assertEquals(scan(center, radius), near(center, radius));
+		}
+	}
+
+	@Test
+	public void followsMovedAndDeletedAirports()
+	{
+		AirportData center = repo.getAirports().iterator().next();
+		double lon = center.lon() > 0 ? center.lon() - 0.5 : center.lon() + 0.5;
+		AirportData near = AirportData.builder().iata("XXX").lat(center.lat()).lon(lon).build();
+
+		repo.addAirport(near);
+		assertTrue(near(center, 100).contains("XXX"));
+		assertEquals(scan(center, 500), near(center, 500));
+
+		// Moved away
+		repo.addAirport(near.withLon(center.lon() > 0 ? center.lon() - 90 : center.lon() + 90));
+		assertFalse(near(center, 100).contains("XXX"));
+		assertEquals(scan(center, 500), near(center, 500));
+
+		// Moved back and deleted
+		repo.addAirport(near);
+		repo.deleteAirport("XXX");
+		assertFalse(near(center, 100).contains("XXX"));
+		assertEquals(scan(center, 500), near(center, 500));
+	}
+
+	private Set<String> near(AirportData center, double radius)
+	{
+		return repo.findAirportsNear(center, radius).stream().map(AirportData::iata).collect(Collectors.toSet());
+	}
+
+	private Set<String> scan(AirportData center, double radius)
+	{
+		return repo.getAirports()
+				.stream()
+				.filter(a -> center.calculateDistanceTo(a) <= radius)
+				.map(AirportData::iata)
+				.collect(Collectors.toSet());
+	}
+}
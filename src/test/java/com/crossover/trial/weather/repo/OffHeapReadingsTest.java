@@ -0,0 +1,86 @@
+package com.crossover.trial.weather.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Tests of the off-heap latest readings.
+ */
+public class OffHeapReadingsTest
+{
+	@Test
+	public void storesTheLatestPoints()
+	{
+		OffHeapReadings readings = new OffHeapReadings(new RepositoryStats());
+		for (int i = 0; i < 3000; i++)
+			readings.allocate(i);
+
+		readings.set(2500, DataPointType.WIND, point(1));
+		readings.set(2500, DataPointType.WIND, point(2));
+		readings.set(7, DataPointType.PRESSURE, DataPoint.builder().first(-1).second(0).third(3).mean(1.5).count(9).build());
+
+		assertEquals(point(2), readings.get(2500, DataPointType.WIND));
+		assertEquals(DataPoint.builder().first(-1).second(0).third(3).mean(1.5).count(9).build(),
+				readings.get(7, DataPointType.PRESSURE));
+		assertNull(readings.get(2500, DataPointType.PRESSURE));
+		assertNull(readings.get(0, DataPointType.WIND));
+	}
+
+	@Test
+	public void readsAreConsistent() throws Exception
+	{
+		OffHeapReadings readings = new OffHeapReadings(new RepositoryStats());
+		readings.allocate(0);
+		readings.set(0, DataPointType.TEMPERATURE, point(0));
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		AtomicBoolean done = new AtomicBoolean();
+		try
+		{
+			List<Future<?>> futures = new ArrayList<>();
+			for (int w = 0; w < 2; w++)
+			{
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 200000; i++)
+						readings.set(0, DataPointType.TEMPERATURE, point(i));
+					done.set(true);
+				}));
+			}
+			for (int r = 0; r < 2; r++)
+			{
+				futures.add(executor.submit(() -> {
+					while (!done.get())
+					{
+						// Every field of a point has the same value, a torn read mixes two of them
+						DataPoint dp = readings.get(0, DataPointType.TEMPERATURE);
+						assertEquals(point(dp.first()), dp);
+					}
+				}));
+			}
+			for (Future<?> f : futures)
+				f.get(60, TimeUnit.SECONDS);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static DataPoint point(int value)
+	{
+		return DataPoint.builder().first(value).second(value).third(value).mean((double) value).count(value).build();
+	}
+}
@@ -0,0 +1,79 @@
+package com.crossover.trial.weather.repo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Tests of the repository snapshots.
+ */
+public class SnapshotCodecTest
+{
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void restoresAirportsAndDataPoints() throws Exception
+	{
+		WeatherRepository repo = new WeatherRepository();
+		repo.init();
+		repo.addAirport(AirportData.builder()
+				.iata("STN")
+				.icao("EGSS")
+				.name("Stansted")
+				.city("London")
+				.country("United Kingdom")
+				.lat(51.885)
+				.lon(0.235)
+				.alt(348.0)
+				.timezone(0.0)
+				.dst("E")
+				.build());
+		DataPoint dp = DataPoint.builder().first(1).second(2).third(3).mean(2.5).count(4).build();
+		repo.addDataPoint("STN", DataPointType.WIND, dp);
+		repo.addDataPoint("BOS", DataPointType.HUMIDITY, dp);
+
+		Path file = folder.getRoot().toPath().resolve("weather.snapshot");
+		SnapshotCodec.write(repo.getAirports(), file);
+
+		WeatherRepository restored = new WeatherRepository();
+		restored.init();
+		restored.restore(SnapshotCodec.read(file));
+
+		assertEquals(repo.getAirports(), restored.getAirports());
+		assertEquals(repo.getDataSize(), restored.getDataSize());
+
+		AirportData stn = restored.findAirport("EGSS").get();
+		assertEquals("Stansted", stn.name());
+		assertEquals(dp, stn.atmosphericInformation().wind());
+		assertEquals(repo.findAirport("STN").get().atmosphericInformation().lastUpdateTime(),
+				stn.atmosphericInformation().lastUpdateTime());
+		assertEquals(dp, restored.findAirport("BOS").get().atmosphericInformation().humidity());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsCorruptedFiles() throws Exception
+	{
+		WeatherRepository repo = new WeatherRepository();
+		repo.init();
+
+		Path file = folder.getRoot().toPath().resolve("weather.snapshot");
+		SnapshotCodec.write(repo.getAirports(), file);
+
+		byte[] content = Files.readAllBytes(file);
+		content[content.length / 2] ^= 1;
+		Files.write(file, content);
+
+		SnapshotCodec.read(file);
+	}
+}
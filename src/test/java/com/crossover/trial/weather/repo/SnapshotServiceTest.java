@@ -0,0 +1,102 @@
+package com.crossover.trial.weather.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.crossover.trial.weather.exceptions.WeatherException;
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Tests of the snapshots and their interplay with the write ahead log.
+ */
+public class SnapshotServiceTest
+{
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private WeatherRepository repo;
+
+	private WriteAheadLog wal;
+
+	// Services to stop after the test
+	private final List<SnapshotService> services = new ArrayList<>();
+
+	@Before
+	public void setUp() throws Exception
+	{
+		repo = new WeatherRepository();
+		repo.init();
+		wal = new WriteAheadLog();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		for (SnapshotService service : services)
+			service.destroy();
+		wal.destroy();
+	}
+
+	@Test
+	public void restoresSnapshotAndLog() throws Exception
+	{
+		String path = folder.getRoot().toPath().resolve("snapshot.smile").toString();
+		String dir = folder.newFolder("wal").toString();
+		ReflectionTestUtils.setField(wal, "dir", dir);
+		service(path).afterPropertiesSet();
+
+		DataPoint wind = DataPoint.builder().first(1).second(2).third(3).mean(2.5).count(4).build();
+		DataPoint humidity = DataPoint.builder().first(10).second(20).third(30).mean(25.0).count(4).build();
+		repo.addDataPoint("BOS", DataPointType.WIND, wind);
+		repo.addAirport(AirportData.builder().iata("STN").icao("EGSS").lat(51.885).lon(0.235).build());
+		assertTrue(services.get(0).write());
+
+		// Only on the log
+		repo.addDataPoint("STN", DataPointType.HUMIDITY, humidity);
+		repo.addDataPoint("BOS", DataPointType.WIND, humidity);
+		repo.deleteAirport("MMU");
+		wal.destroy();
+
+		WeatherRepository live = repo;
+		repo = new WeatherRepository();
+		repo.init();
+		wal = new WriteAheadLog();
+		ReflectionTestUtils.setField(wal, "dir", dir);
+		service(path).afterPropertiesSet();
+
+		assertEquals(live.getAirports(), repo.getAirports());
+		assertEquals(humidity, repo.findAirport("EGSS").get().atmosphericInformation().humidity());
+		assertEquals(humidity, repo.findAirport("BOS").get().atmosphericInformation().wind());
+		assertFalse(repo.findAirport("MMU").isPresent());
+	}
+
+	@Test(expected = WeatherException.class)
+	public void refusesLogWithoutSnapshots() throws Exception
+	{
+		ReflectionTestUtils.setField(wal, "dir", folder.newFolder("wal").toString());
+		service("").afterPropertiesSet();
+	}
+
+	private SnapshotService service(String path)
+	{
+		SnapshotService retval = new SnapshotService();
+		services.add(retval);
+		ReflectionTestUtils.setField(retval, "repo", repo);
+		ReflectionTestUtils.setField(retval, "wal", wal);
+		ReflectionTestUtils.setField(retval, "path", path);
+		ReflectionTestUtils.setField(retval, "intervalMillis", 60000L);
+		return retval;
+	}
+}
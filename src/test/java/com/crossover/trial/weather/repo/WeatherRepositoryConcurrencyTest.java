@@ -0,0 +1,212 @@
+package com.crossover.trial.weather.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.AtmosphericInformation;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Stress tests of the repository under many parallel writers.
+ */
+public class WeatherRepositoryConcurrencyTest
+{
+	private static final int WRITERS = 32;
+	private static final int OPERATIONS = 2000;
+
+	private WeatherRepository repo;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp()
+	{
+		repo = new WeatherRepository();
+		repo.init();
+		executor = Executors.newFixedThreadPool(WRITERS);
+	}
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void requestFrequencyHasNoLostUpdates() throws Exception
+	{
+		runWriters(w -> {
+			for (int i = 0; i < OPERATIONS; i++)
+				repo.updateRequestFrequency(i % 2 == 0 ? "BOS" : "bos", 100.0);
+		});
+
+		assertEquals(Long.valueOf(WRITERS * OPERATIONS), repo.getIataFreq().get("BOS"));
+		assertEquals(WRITERS * OPERATIONS, repo.getRadiusFreq().count(100.0));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void dataPointsHaveNoLostUpdates() throws Exception
+	{
+		runWriters(w -> {
+			repo.addAirport(AirportData.builder().iata("W" + w).lat(40.0).lon((double) w).build());
+			for (int i = 0; i < OPERATIONS; i++)
+			{
+				DataPointType type = DataPointType.values()[i % DataPointType.values().length];
+				repo.addDataPoint("W" + w, type, point(type, w, i));
+				repo.addDataPoint("JFK", type, point(type, w, i));
+			}
+		});
+
+		assertEquals(5 + WRITERS, repo.getAirportCodes().size());
+		for (int w = 0; w < WRITERS; w++)
+		{
+			AtmosphericInformation ai = repo.findAirport("W" + w).get().atmosphericInformation();
+			for (DataPoint dp : new DataPoint[] { ai.wind(), ai.temperature(), ai.humidity(), ai.pressure(),
+					ai.cloudCover(), ai.precipitation() })
+			{
+				assertNotNull(dp);
+				assertEquals(Integer.valueOf(w), dp.first());
+			}
+		}
+
+		AtmosphericInformation jfk = repo.findAirport("JFK").get().atmosphericInformation();
+		assertNotNull(jfk.wind());
+		assertNotNull(jfk.precipitation());
+
+		// Every accepted point is counted
+		Map<String, Map<String, Number>> ingest = (Map<String, Map<String, Number>>) repo.getStats().get("ingest");
+		assertEquals(2L * WRITERS * OPERATIONS,
+				ingest.values().stream().mapToLong(c -> c.get("count").longValue()).sum());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void statsCountRejectionsAndFootprint()
+	{
+		DataPoint dp = point(DataPointType.WIND, 0, 0);
+		repo.addDataPoint("BOS", DataPointType.WIND, dp);
+		repo.addDataPoint("XXX", DataPointType.WIND, dp);
+		repo.addDataPoint("BOS", DataPointType.PRESSURE, dp);
+
+		Map<String, Object> stats = repo.getStats();
+		assertEquals(5, stats.get("airports"));
+		assertEquals(1L, ((Map<String, Long>) stats.get("rejected")).get("unknown_airport").longValue());
+		assertEquals(1L, ((Map<String, Long>) stats.get("rejected")).get("out_of_range").longValue());
+		assertEquals(1L, ((Map<String, Long>) stats.get("out_of_range")).get("pressure").longValue());
+		assertEquals(0L, ((Map<String, Long>) stats.get("out_of_range")).get("wind").longValue());
+		assertEquals(1L, ((Map<String, Map<String, Number>>) stats.get("ingest")).get("wind").get("count"));
+
+		Map<String, Long> footprint = (Map<String, Long>) stats.get("footprint_bytes");
+		assertEquals(repo.getHistoryFootprint("BOS").getAsLong(), footprint.get("history").longValue());
+		assertTrue(footprint.get("readings") > 0);
+	}
+
+	@Test
+	public void offHeapDataPointsHaveNoLostUpdates() throws Exception
+	{
+		ReflectionTestUtils.setField(repo, "offHeapReadings", true);
+		repo.init();
+
+		dataPointsHaveNoLostUpdates();
+	}
+
+	@Test
+	public void airportUpdatesKeepAtmosphericState() throws Exception
+	{
+		runWriters(w -> {
+			for (int i = 0; i < OPERATIONS; i++)
+			{
+				if (w % 2 == 0)
+					repo.addAirport(AirportData.builder().iata("BOS").icao("KBOS").lat(42.0).lon((double) w).build());
+				else
+					repo.addDataPoint("BOS", DataPointType.HUMIDITY, point(DataPointType.HUMIDITY, w, i));
+			}
+		});
+
+		AirportData bos = repo.findAirport("KBOS").get();
+		assertNotNull(bos.atmosphericInformation().humidity());
+		assertEquals(1, repo.findAirportsNear(bos, 0).size());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void airportChurnReusesOrdinals() throws Exception
+	{
+		repo.addDataPoint("BOS", DataPointType.WIND, point(DataPointType.WIND, 0, 0));
+		AirportData bos = repo.findAirport("BOS").get();
+		Map<String, Long> before = new HashMap<>((Map<String, Long>) repo.getStats().get("footprint_bytes"));
+
+		runWriters(w -> {
+			for (int i = 0; i < OPERATIONS; i++)
+			{
+				repo.addAirport(AirportData.builder().iata("C" + w).lat(42.0).lon(-71.0).build());
+				repo.addDataPoint("C" + w, DataPointType.WIND, point(DataPointType.WIND, w, i));
+				repo.deleteAirport("C" + w);
+			}
+		});
+
+		// Deleted rows and readings are reused, the store never grows past the airports held at once
+		Map<String, Long> after = (Map<String, Long>) repo.getStats().get("footprint_bytes");
+		assertEquals(before.get("airports"), after.get("airports"));
+		assertEquals(before.get("readings"), after.get("readings"));
+
+		assertEquals(5, repo.getAirportCodes().size());
+		assertEquals(bos, repo.findAirport("BOS").get());
+		assertEquals(bos.atmosphericInformation(), repo.findAirport("BOS").get().atmosphericInformation());
+
+		// A new airport starts without the readings of the deleted one on its row
+		repo.addAirport(AirportData.builder().iata("NEW").lat(42.0).lon(-71.0).build());
+		assertEquals(AtmosphericInformation.builder().build(), repo.findAirport("NEW").get().atmosphericInformation());
+	}
+
+	private DataPoint point(DataPointType type, int writer, int i)
+	{
+		double mean = type == DataPointType.PRESSURE ? 700.0 : 20.0;
+		return DataPoint.builder().first(writer).second(i).third(i).mean(mean).count(1).build();
+	}
+
+	private void runWriters(Writer writer) throws Exception
+	{
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Void>> results = new ArrayList<>();
+		for (int w = 0; w < WRITERS; w++)
+		{
+			int id = w;
+			Callable<Void> task = () -> {
+				start.await();
+				writer.run(id);
+				return null;
+			};
+			results.add(executor.submit(task));
+		}
+
+		start.countDown();
+		for (Future<Void> f : results)
+			f.get();
+	}
+
+	@FunctionalInterface
+	private interface Writer
+	{
+		void run(int writer);
+	}
+}
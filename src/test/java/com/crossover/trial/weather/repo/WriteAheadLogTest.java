@@ -0,0 +1,238 @@
+package com.crossover.trial.weather.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.crossover.trial.weather.model.AirportData;
+import com.crossover.trial.weather.model.DataPoint;
+import com.crossover.trial.weather.model.DataPointType;
+
+/**
+ * Tests of the write ahead log replay.
+ */
+public class WriteAheadLogTest
+{
+	private static final int WRITERS = 8;
+	private static final int UPDATES = 2000;
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path dir;
+
+	private WeatherRepository repo;
+
+	private WriteAheadLog wal;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		dir = folder.getRoot().toPath();
+		repo = new WeatherRepository();
+		repo.init();
+		wal = new WriteAheadLog();
+		wal.open(dir);
+		repo.addListener(wal);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		wal.destroy();
+	}
+
+	@Test
+	public void replaysMutations() throws Exception
+	{
+		DataPoint dp = DataPoint.builder().first(1).second(2).third(3).mean(2.5).count(4).build();
+		repo.addAirport(AirportData.builder().iata("STN").icao("EGSS").name("Stansted").lat(51.885).lon(0.235).build());
+		repo.addDataPoint("STN", DataPointType.WIND, dp);
+		repo.addDataPoint("BOS", DataPointType.HUMIDITY, dp);
+		repo.deleteAirport("MMU");
+		wal.flush();
+
+		WeatherRepository restored = new WeatherRepository();
+		restored.init();
+		assertEquals(4, WriteAheadLog.replay(restored, dir));
+
+		assertEquals(repo.getAirports(), restored.getAirports());
+		assertEquals(dp, restored.findAirport("EGSS").get().atmosphericInformation().wind());
+		assertEquals(dp, restored.findAirport("BOS").get().atmosphericInformation().humidity());
+		assertFalse(restored.findAirport("MMU").isPresent());
+	}
+
+	@Test
+	public void replayMatchesConcurrentUpdates() throws Exception
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+		try
+		{
+			List<Future<?>> writers = new ArrayList<>();
+			for (int w = 0; w < WRITERS; w++)
+			{
+				int writer = w;
+				writers.add(executor.submit(() -> {
+					for (int i = 0; i < UPDATES; i++)
+					{
+						DataPoint dp = DataPoint.builder().first(writer).second(i).third(i).mean(10.0).count(1).build();
+						repo.addDataPoint("BOS", DataPointType.WIND, dp);
+						repo.addDataPoint("EWR", DataPointType.WIND, dp);
+
+						// Churn of an airport being updated by the other writers
+						if (writer == 0 && i % 100 == 0)
+						{
+							repo.deleteAirport("EWR");
+							repo.addAirport(AirportData.builder().iata("EWR").lat(40.6925).lon(-74.168667).build());
+						}
+					}
+				}));
+			}
+			for (Future<?> f : writers)
+				f.get();
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		wal.flush();
+
+		WeatherRepository restored = new WeatherRepository();
+		restored.init();
+		WriteAheadLog.replay(restored, dir);
+
+		assertEquals(repo.getAirports(), restored.getAirports());
+	}
+
+	@Test
+	public void stopsAtTornTail() throws Exception
+	{
+		DataPoint dp = DataPoint.builder().first(1).second(2).third(3).mean(2.5).count(4).build();
+		repo.addDataPoint("BOS", DataPointType.WIND, dp);
+		repo.addDataPoint("JFK", DataPointType.WIND, dp);
+		wal.flush();
+
+		try (Stream<Path> files = Files.list(dir))
+		{
+			Path segment = files.findFirst().get();
+			Files.write(segment, new byte[] { 0, 0, 0, 40, 1, 2 }, StandardOpenOption.APPEND);
+		}
+
+		WeatherRepository restored = new WeatherRepository();
+		restored.init();
+		assertEquals(2, WriteAheadLog.replay(restored, dir));
+	}
+
+	@Test
+	public void truncatesSegmentsCoveredBySnapshot() throws Exception
+	{
+		DataPoint dp = DataPoint.builder().first(1).second(2).third(3).mean(2.5).count(4).build();
+		repo.addDataPoint("BOS", DataPointType.WIND, dp);
+		long segment = wal.rotate();
+		repo.addDataPoint("JFK", DataPointType.WIND, dp);
+		wal.truncate(segment);
+		wal.flush();
+
+		WeatherRepository restored = new WeatherRepository();
+		restored.init();
+		assertEquals(1, WriteAheadLog.replay(restored, dir));
+		assertEquals(dp, restored.findAirport("JFK").get().atmosphericInformation().wind());
+	}
+
+	@Test
+	public void appendsRecordsLargerThanTheBuffer() throws Exception
+	{
+		char[] name = new char[3 << 20];
+		Arrays.fill(name, 'x');
+		AirportData stn = AirportData.builder().iata("STN").name(new String(name)).lat(51.885).lon(0.235).build();
+		repo.addAirport(stn);
+		repo.addDataPoint("STN", DataPointType.WIND, DataPoint.builder().first(1).second(2).third(3).mean(2.5).count(4)
+				.build());
+		wal.flush();
+
+		WeatherRepository restored = new WeatherRepository();
+		restored.init();
+		assertEquals(2, WriteAheadLog.replay(restored, dir));
+		assertEquals(repo.findAirport("STN").get(), restored.findAirport("STN").get());
+	}
+
+	@Test
+	public void writesOutOfTheAirportLock() throws Exception
+	{
+		wal.destroy();
+		wal = new WriteAheadLog();
+		ReflectionTestUtils.setField(wal, "fsyncMillis", 0L);
+		wal.open(dir);
+
+		// Appended under the lock of the airport, written by the same thread once unlocked
+		wal.airportDeleted("BOS");
+		assertEquals(0, segmentBytes());
+		wal.mutationsUnlocked();
+		assertTrue(segmentBytes() > 0);
+	}
+
+	@Test
+	public void failsOnWriteError() throws Exception
+	{
+		DataPoint dp = DataPoint.builder().first(1).second(2).third(3).mean(2.5).count(4).build();
+		repo.addDataPoint("BOS", DataPointType.WIND, dp);
+		wal.flush();
+
+		// Segment closed under the log, the next write fails
+		((FileChannel) ReflectionTestUtils.getField(wal, "channel")).close();
+		repo.addDataPoint("JFK", DataPointType.WIND, dp);
+		assertFlushFails();
+		assertTrue(wal.isFailed());
+
+		// Later mutations are dropped and never written after the failed records
+		repo.addDataPoint("LGA", DataPointType.WIND, dp);
+		assertFlushFails();
+
+		WeatherRepository restored = new WeatherRepository();
+		restored.init();
+		assertEquals(1, WriteAheadLog.replay(restored, dir));
+		ReflectionTestUtils.setField(wal, "channel", null);
+	}
+
+	private long segmentBytes() throws IOException
+	{
+		try (Stream<Path> files = Files.list(dir))
+		{
+			return files.mapToLong(f -> f.toFile().length()).sum();
+		}
+	}
+
+	private void assertFlushFails()
+	{
+		try
+		{
+			wal.flush();
+			fail("Flush of a failed log");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+	}
+}